@@ -16,10 +16,24 @@
 package net.mostlyharmless.jghservice;
 
 import javax.ws.rs.ApplicationPath;
+import net.mostlyharmless.jghservice.connector.github.GithubConnector;
+import net.mostlyharmless.jghservice.connector.github.IssueWriteCoalescer;
+import net.mostlyharmless.jghservice.connector.jira.IssueCreateBatcher;
+import net.mostlyharmless.jghservice.connector.jira.JiraConnector;
+import net.mostlyharmless.jghservice.connector.jira.VersionUpdateDebouncer;
 import net.mostlyharmless.jghservice.resources.ObjectMapperProvider;
+import net.mostlyharmless.jghservice.resources.ServiceConfig;
 import net.mostlyharmless.jghservice.resources.ServiceConfigBinder;
+import net.mostlyharmless.jghservice.resources.Warmup;
+import net.mostlyharmless.jghservice.resources.WebhookJournal;
+import net.mostlyharmless.jghservice.resources.WebhookQueue;
+import net.mostlyharmless.jghservice.resources.github.GithubWebhook;
+import net.mostlyharmless.jghservice.resources.jira.JiraWebhook;
+import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.spi.AbstractContainerLifecycleListener;
+import org.glassfish.jersey.server.spi.Container;
 
 /**
  *
@@ -30,14 +44,101 @@ public class JiraGithubService extends ResourceConfig
 {
     public JiraGithubService()
     {
-        super(net.mostlyharmless.jghservice.resources.jira.JiraWebhook.class,
-              net.mostlyharmless.jghservice.resources.github.GithubWebhook.class,
+        super(JiraWebhook.class,
+              GithubWebhook.class,
               net.mostlyharmless.jghservice.resources.TestResource.class,
+              net.mostlyharmless.jghservice.resources.AdminResource.class,
               ObjectMapperProvider.class,
               JacksonFeature.class);
         
         register(new ServiceConfigBinder());
+        register(new Lifecycle());
         
+    }
+    
+    private static class Lifecycle extends AbstractContainerLifecycleListener
+    {
+        @Override
+        public void onStartup(Container container)
+        {
+            // Runs in the background; /admin/ready says when it's done
+            final ServiceLocator locator = container.getApplicationHandler().getServiceLocator();
+            Warmup warmup = locator.getService(Warmup.class);
+            if (warmup != null)
+            {
+                warmup.start();
+            }
+            // Events accepted before the last shutdown (or crash) that 
+            // weren't processed go back on the queue, each with its own 
+            // webhook instance as if it had just arrived. New events are 
+            // journaled and queued behind them, so each issue's events 
+            // stay in order.
+            final WebhookJournal journal = locator.getService(WebhookJournal.class);
+            if (journal != null)
+            {
+                journal.replay(entry ->
+                {
+                    switch (entry.getSource())
+                    {
+                        case WebhookJournal.GITHUB:
+                            return locator.createAndInitialize(GithubWebhook.class).replay(entry);
+                        case WebhookJournal.JIRA:
+                            return locator.createAndInitialize(JiraWebhook.class).replay(entry);
+                        default:
+                            journal.complete(entry);
+                            return true;
+                    }
+                });
+            }
+        }
         
+        @Override
+        public void onShutdown(Container container)
+        {
+            ServiceLocator locator = container.getApplicationHandler().getServiceLocator();
+            // Queued events are processed first; they may still add to 
+            // the batcher and coalescer
+            WebhookQueue queue = locator.getService(WebhookQueue.class);
+            ServiceConfig config = locator.getService(ServiceConfig.class);
+            if (queue != null && config != null)
+            {
+                queue.shutdown(config.getWebhooks().getDeadline());
+            }
+            // Anything still held back is sent before the connectors stop
+            IssueCreateBatcher batcher = locator.getService(IssueCreateBatcher.class);
+            if (batcher != null)
+            {
+                batcher.shutdown();
+            }
+            VersionUpdateDebouncer debouncer = locator.getService(VersionUpdateDebouncer.class);
+            if (debouncer != null && config != null)
+            {
+                debouncer.shutdown(config.getWebhooks().getDeadline());
+            }
+            IssueWriteCoalescer coalescer = locator.getService(IssueWriteCoalescer.class);
+            if (coalescer != null)
+            {
+                coalescer.shutdown();
+            }
+            // Whatever the queue didn't get to stays journaled, as do 
+            // events whose debounced version updates haven't finished by 
+            // now: the journal takes no more completions once it's shut 
+            // down, and replaying those finds any versions already set
+            WebhookJournal journal = locator.getService(WebhookJournal.class);
+            if (journal != null)
+            {
+                journal.shutdown();
+            }
+            JiraConnector jira = locator.getService(JiraConnector.class);
+            if (jira != null)
+            {
+                jira.shutdown();
+            }
+            GithubConnector github = locator.getService(GithubConnector.class);
+            if (github != null)
+            {
+                github.shutdown();
+            }
+        }
     }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed size pool with a bounded queue used to run commands asynchronously
+ * against one upstream. Work submitted while the queue is full is rejected
+ * rather than queued without limit.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class BoundedExecutor extends ThreadPoolExecutor
+{
+    public BoundedExecutor(final String name, int threads, int queueSize)
+    {
+        super(threads, threads, 60, TimeUnit.SECONDS, 
+              new ArrayBlockingQueue<Runnable>(queueSize),
+              new NamedThreadFactory(name));
+        allowCoreThreadTimeOut(true);
+    }
+    
+    private static class NamedThreadFactory implements ThreadFactory
+    {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+        
+        NamedThreadFactory(String name)
+        {
+            this.name = name;
+        }
+        
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
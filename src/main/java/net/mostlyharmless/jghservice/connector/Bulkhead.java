@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.mostlyharmless.jghservice.resources.ServiceConfig;
+
+/**
+ * Caps how much of the service one kind of work can tie up at once.
+ * 
+ * At most maxConcurrent calls run inside the bulkhead at the same time. A 
+ * call that finds it full waits up to maxWait (never past its deadline) 
+ * for a slot and is then rejected with a {@link BulkheadFullException}, 
+ * so a slow upstream or a flood of one kind of event fills its own 
+ * bulkhead instead of every thread the container has.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class Bulkhead
+{
+    private static final Logger LOGGER = Logger.getLogger(Bulkhead.class.getName());
+    
+    private final String name;
+    private final int maxConcurrent;
+    private final long maxWait;
+    private final Semaphore permits;
+    
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waitMillis = new AtomicLong();
+    
+    private Bulkhead(Builder builder)
+    {
+        this.name = builder.name;
+        this.maxConcurrent = builder.maxConcurrent;
+        this.maxWait = builder.maxWait;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+    
+    public <T> T execute(Deadline deadline, Attempt<T> attempt) 
+        throws IOException, UnexpectedResponseException
+    {
+        acquire(deadline);
+        try
+        {
+            return attempt.run();
+        }
+        finally
+        {
+            release();
+        }
+    }
+    
+    /**
+     * Takes a slot, waiting for one if need be. Every successful call must 
+     * be matched by a call to {@link #release()}.
+     */
+    public void acquire(Deadline deadline) throws IOException
+    {
+        acquire(deadline, maxWait);
+    }
+    
+    /**
+     * Takes a slot, waiting as long as the deadline allows rather than 
+     * maxWait; for work that's already been accepted and can't be turned 
+     * away, only held back.
+     */
+    public void acquireWithin(Deadline deadline) throws IOException
+    {
+        acquire(deadline, Long.MAX_VALUE);
+    }
+    
+    private void acquire(Deadline deadline, long maxWait) throws IOException
+    {
+        if (!permits.tryAcquire())
+        {
+            long wait = Math.min(maxWait, deadline.remaining());
+            long start = System.nanoTime();
+            waiting.incrementAndGet();
+            try
+            {
+                if (wait <= 0 || !permits.tryAcquire(wait, TimeUnit.MILLISECONDS))
+                {
+                    deadline.check();
+                    rejected.incrementAndGet();
+                    LOGGER.log(Level.WARNING, "Bulkhead {0} is full; rejected", name);
+                    throw new BulkheadFullException(name, maxConcurrent);
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for bulkhead " + name);
+            }
+            finally
+            {
+                waiting.decrementAndGet();
+                waitMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+        
+        admitted.incrementAndGet();
+        int now = active.incrementAndGet();
+        int high = peak.get();
+        while (now > high && !peak.compareAndSet(high, now))
+        {
+            high = peak.get();
+        }
+    }
+    
+    public void release()
+    {
+        active.decrementAndGet();
+        permits.release();
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getMaxConcurrent()
+    {
+        return maxConcurrent;
+    }
+    
+    /**
+     * Calls inside the bulkhead right now.
+     */
+    public int getActive()
+    {
+        return active.get();
+    }
+    
+    /**
+     * Most calls that have been inside the bulkhead at once.
+     */
+    public int getPeak()
+    {
+        return peak.get();
+    }
+    
+    /**
+     * Calls waiting for a slot right now.
+     */
+    public int getWaiting()
+    {
+        return waiting.get();
+    }
+
+    public long getAdmitted()
+    {
+        return admitted.get();
+    }
+
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+    
+    /**
+     * Total time calls have spent waiting for a slot, in milliseconds.
+     */
+    public long getWaitMillis()
+    {
+        return waitMillis.get();
+    }
+    
+    public static class Builder
+    {
+        private final String name;
+        private int maxConcurrent = ServiceConfig.Bulkhead.DEFAULT_MAX_CONCURRENT;
+        private long maxWait = ServiceConfig.Bulkhead.DEFAULT_MAX_WAIT;
+        
+        public Builder(String name)
+        {
+            this.name = name;
+        }
+        
+        public Builder withMaxConcurrent(int maxConcurrent)
+        {
+            this.maxConcurrent = maxConcurrent;
+            return this;
+        }
+        
+        /**
+         * @param maxWait how long (ms) to wait for a slot before rejecting; 
+         * 0 rejects straight away
+         */
+        public Builder withMaxWait(long maxWait)
+        {
+            this.maxWait = maxWait;
+            return this;
+        }
+        
+        public Builder withBulkhead(ServiceConfig.Bulkhead bulkhead)
+        {
+            this.maxConcurrent = bulkhead.getMaxConcurrent();
+            this.maxWait = bulkhead.getMaxWait();
+            return this;
+        }
+        
+        public Bulkhead build()
+        {
+            if (maxConcurrent < 1)
+            {
+                throw new IllegalStateException("maxConcurrent must be at least 1.");
+            }
+            return new Bulkhead(this);
+        }
+    }
+}
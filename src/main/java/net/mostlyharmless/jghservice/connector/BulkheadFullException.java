@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.io.IOException;
+
+/**
+ * Thrown without doing the work when a {@link Bulkhead} has no room for it.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class BulkheadFullException extends IOException
+{
+    public BulkheadFullException(String name, int maxConcurrent)
+    {
+        super("Bulkhead " + name + " is full (" + maxConcurrent + " in use)");
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.mostlyharmless.jghservice.resources.ServiceConfig;
+
+/**
+ * Stops calls to an upstream that's failing or slow so they fail fast 
+ * rather than tying up threads.
+ * 
+ * The outcome of the last few calls is kept in a sliding window. A call 
+ * fails if it throws an IOException or gets a 5xx; any other response 
+ * means the upstream is up, even if it didn't like the request. Calls cut
+ * short by their {@link Deadline} aren't counted either way. A call is
+ * slow if it took longer than the configured duration. Once the window 
+ * has enough calls in it and either the failure rate or the slow call rate
+ * reaches its threshold, the breaker opens and calls are rejected with a 
+ * {@link CircuitOpenException}. After a while it goes half-open and lets a
+ * few trial calls through; if they're all fine it closes again, otherwise
+ * it goes back to open.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class CircuitBreaker
+{
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+    
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+    
+    private final String name;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long slowCallDuration;
+    private final int slowCallRateThreshold;
+    private final long openDuration;
+    private final int halfOpenCalls;
+    
+    // All guarded by this
+    private State state = State.CLOSED;
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+    
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timesOpened = new AtomicLong();
+    
+    private CircuitBreaker(Builder builder)
+    {
+        this.name = builder.name;
+        this.minimumCalls = builder.minimumCalls;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallDuration = builder.slowCallDuration;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.openDuration = builder.openDuration;
+        this.halfOpenCalls = builder.halfOpenCalls;
+        this.failed = new boolean[builder.windowSize];
+        this.slow = new boolean[builder.windowSize];
+    }
+    
+    public <T> T execute(Attempt<T> attempt) throws IOException, UnexpectedResponseException
+    {
+        acquirePermission();
+        long start = System.nanoTime();
+        boolean success = false;
+        boolean ignored = false;
+        try
+        {
+            T result = attempt.run();
+            success = true;
+            return result;
+        }
+        catch (UnexpectedResponseException ex)
+        {
+            success = ex.getResponseCode() < 500;
+            throw ex;
+        }
+        catch (DeadlineExceededException ex)
+        {
+            // Our caller ran out of time; says nothing about the upstream
+            ignored = true;
+            throw ex;
+        }
+        finally
+        {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (ignored)
+            {
+                release();
+            }
+            else
+            {
+                record(!success, elapsed >= slowCallDuration);
+            }
+        }
+    }
+    
+    private synchronized void acquirePermission() throws CircuitOpenException
+    {
+        if (state == State.OPEN)
+        {
+            if (System.currentTimeMillis() - openedAt < openDuration)
+            {
+                rejected.incrementAndGet();
+                throw new CircuitOpenException(name);
+            }
+            transition(State.HALF_OPEN);
+        }
+        
+        if (state == State.HALF_OPEN)
+        {
+            if (trialsStarted >= halfOpenCalls)
+            {
+                rejected.incrementAndGet();
+                throw new CircuitOpenException(name);
+            }
+            trialsStarted++;
+        }
+    }
+    
+    private synchronized void release()
+    {
+        // Give back a half-open trial slot that didn't produce an outcome
+        if (state == State.HALF_OPEN && trialsStarted > trialsSucceeded)
+        {
+            trialsStarted--;
+        }
+    }
+    
+    private synchronized void record(boolean failure, boolean slowCall)
+    {
+        switch (state)
+        {
+            case HALF_OPEN:
+                if (failure || slowCall)
+                {
+                    transition(State.OPEN);
+                }
+                else if (++trialsSucceeded >= halfOpenCalls)
+                {
+                    transition(State.CLOSED);
+                }
+                break;
+            case CLOSED:
+                if (calls == failed.length)
+                {
+                    failures -= failed[next] ? 1 : 0;
+                    slowCalls -= slow[next] ? 1 : 0;
+                }
+                else
+                {
+                    calls++;
+                }
+                failed[next] = failure;
+                slow[next] = slowCall;
+                failures += failure ? 1 : 0;
+                slowCalls += slowCall ? 1 : 0;
+                next = (next + 1) % failed.length;
+                
+                if (calls >= minimumCalls 
+                    && (failures * 100 >= failureRateThreshold * calls 
+                        || slowCalls * 100 >= slowCallRateThreshold * calls))
+                {
+                    transition(State.OPEN);
+                }
+                break;
+            default:
+                // Calls that started before the breaker opened
+                break;
+        }
+    }
+    
+    private void transition(State newState)
+    {
+        LOGGER.log(newState == State.OPEN ? Level.WARNING : Level.INFO, 
+                   "Circuit breaker for " + name + " " + state + " -> " + newState);
+        state = newState;
+        switch (newState)
+        {
+            case OPEN:
+                openedAt = System.currentTimeMillis();
+                timesOpened.incrementAndGet();
+                break;
+            case HALF_OPEN:
+                trialsStarted = 0;
+                trialsSucceeded = 0;
+                break;
+            case CLOSED:
+                calls = 0;
+                failures = 0;
+                slowCalls = 0;
+                next = 0;
+                break;
+        }
+    }
+    
+    public String getName()
+    {
+        return name;
+    }
+    
+    public synchronized State getState()
+    {
+        return state;
+    }
+    
+    /**
+     * Number of calls in the sliding window.
+     */
+    public synchronized int getCalls()
+    {
+        return calls;
+    }
+    
+    /**
+     * Percentage of calls in the window that failed.
+     */
+    public synchronized int getFailureRate()
+    {
+        return calls == 0 ? 0 : failures * 100 / calls;
+    }
+    
+    /**
+     * Percentage of calls in the window that were slow.
+     */
+    public synchronized int getSlowCallRate()
+    {
+        return calls == 0 ? 0 : slowCalls * 100 / calls;
+    }
+    
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+    
+    public long getTimesOpened()
+    {
+        return timesOpened.get();
+    }
+    
+    public static class Builder
+    {
+        private final String name;
+        private int windowSize = ServiceConfig.CircuitBreaker.DEFAULT_WINDOW_SIZE;
+        private int minimumCalls = ServiceConfig.CircuitBreaker.DEFAULT_MINIMUM_CALLS;
+        private int failureRateThreshold = ServiceConfig.CircuitBreaker.DEFAULT_FAILURE_RATE_THRESHOLD;
+        private long slowCallDuration = ServiceConfig.CircuitBreaker.DEFAULT_SLOW_CALL_DURATION;
+        private int slowCallRateThreshold = ServiceConfig.CircuitBreaker.DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+        private long openDuration = ServiceConfig.CircuitBreaker.DEFAULT_OPEN_DURATION;
+        private int halfOpenCalls = ServiceConfig.CircuitBreaker.DEFAULT_HALF_OPEN_CALLS;
+        
+        public Builder(String name)
+        {
+            this.name = name;
+        }
+        
+        public Builder withWindowSize(int windowSize)
+        {
+            this.windowSize = windowSize;
+            return this;
+        }
+        
+        public Builder withMinimumCalls(int minimumCalls)
+        {
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+        
+        /**
+         * @param failureRateThreshold percentage of failed calls that opens the breaker
+         */
+        public Builder withFailureRateThreshold(int failureRateThreshold)
+        {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+        
+        /**
+         * @param slowCallDuration calls taking at least this long (ms) are slow
+         * @param slowCallRateThreshold percentage of slow calls that opens the breaker
+         */
+        public Builder withSlowCalls(long slowCallDuration, int slowCallRateThreshold)
+        {
+            this.slowCallDuration = slowCallDuration;
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+        
+        public Builder withOpenDuration(long openDuration)
+        {
+            this.openDuration = openDuration;
+            return this;
+        }
+        
+        public Builder withHalfOpenCalls(int halfOpenCalls)
+        {
+            this.halfOpenCalls = halfOpenCalls;
+            return this;
+        }
+        
+        public Builder withCircuitBreaker(ServiceConfig.CircuitBreaker config)
+        {
+            this.windowSize = config.getWindowSize();
+            this.minimumCalls = config.getMinimumCalls();
+            this.failureRateThreshold = config.getFailureRateThreshold();
+            this.slowCallDuration = config.getSlowCallDuration();
+            this.slowCallRateThreshold = config.getSlowCallRateThreshold();
+            this.openDuration = config.getOpenDuration();
+            this.halfOpenCalls = config.getHalfOpenCalls();
+            return this;
+        }
+        
+        public CircuitBreaker build()
+        {
+            if (windowSize < 1 || halfOpenCalls < 1)
+            {
+                throw new IllegalStateException("windowSize and halfOpenCalls must be at least 1.");
+            }
+            return new CircuitBreaker(this);
+        }
+    }
+}
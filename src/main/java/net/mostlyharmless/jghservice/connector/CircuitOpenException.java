@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.io.IOException;
+
+/**
+ * Thrown without contacting the upstream when its circuit breaker is open.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class CircuitOpenException extends IOException
+{
+    public CircuitOpenException(String name)
+    {
+        super("Circuit breaker for " + name + " is open");
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.mostlyharmless.jghservice.resources.jira.JiraEvent;
+
+/**
+ * Shared Jackson codecs.
+ * 
+ * Building an ObjectMapper (and registering modules on it) is expensive and
+ * throws away the serializer caches every time. There are exactly two 
+ * mappers in the service: one for payloads coming from JIRA/Github and one 
+ * for the request bodies the commands serialize from their own fields. 
+ * Everything else is an ObjectReader or ObjectWriter derived from those; 
+ * both are immutable and safe to share between threads. Readers are kept 
+ * per payload type and fetch their root deserializer when they are built, 
+ * so commands hold theirs in a static field and pay for it once. 
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public final class Codecs
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectMapper COMMAND_MAPPER = new ObjectMapper();
+    
+    static
+    {
+        SimpleModule module = new SimpleModule();
+        module.addDeserializer(JiraEvent.Issue.class, new JiraEvent.Issue.Deserializer());
+        MAPPER.registerModule(module);
+        MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        
+        COMMAND_MAPPER
+            .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+    
+    private static final ObjectReader TREE_READER = MAPPER.reader();
+    private static final ObjectWriter TREE_WRITER = MAPPER.writer();
+    private static final ObjectWriter COMMAND_WRITER = COMMAND_MAPPER.writer();
+    
+    private static final ConcurrentMap<Type, ObjectReader> readers = 
+        new ConcurrentHashMap<>();
+    
+    private Codecs() {}
+    
+    /**
+     * The mapper used for everything JIRA and Github send us; exposed for 
+     * Jersey via ObjectMapperProvider. Don't reconfigure it.
+     */
+    public static ObjectMapper mapper()
+    {
+        return MAPPER;
+    }
+    
+    public static JsonFactory factory()
+    {
+        return MAPPER.getFactory();
+    }
+    
+    public static ObjectReader reader(Class<?> type)
+    {
+        ObjectReader reader = readers.get(type);
+        if (reader == null)
+        {
+            ObjectReader created = MAPPER.reader(type);
+            reader = readers.putIfAbsent(type, created);
+            if (reader == null)
+            {
+                reader = created;
+            }
+        }
+        return reader;
+    }
+    
+    public static ObjectReader reader(TypeReference<?> type)
+    {
+        ObjectReader reader = readers.get(type.getType());
+        if (reader == null)
+        {
+            ObjectReader created = MAPPER.reader(type);
+            reader = readers.putIfAbsent(type.getType(), created);
+            if (reader == null)
+            {
+                reader = created;
+            }
+        }
+        return reader;
+    }
+    
+    /**
+     * For responses that are only picked through as a tree. 
+     */
+    public static ObjectReader treeReader()
+    {
+        return TREE_READER;
+    }
+    
+    /**
+     * For request bodies built up as a tree. 
+     */
+    public static ObjectWriter treeWriter()
+    {
+        return TREE_WRITER;
+    }
+    
+    /**
+     * For commands that serialize their own (non-null) fields as the 
+     * request body.
+     */
+    public static ObjectWriter commandWriter()
+    {
+        return COMMAND_WRITER;
+    }
+    
+    /**
+     * Writes a JSON value with a generator, e.g. a command's writeBody.
+     */
+    public interface JsonSource
+    {
+        void writeTo(JsonGenerator generator) throws IOException;
+    }
+    
+    /**
+     * A request body that generates the JSON straight onto the connection 
+     * as UTF-8, with no tree or String in between.
+     */
+    public static HttpTransport.Body body(final JsonSource source)
+    {
+        return out ->
+        {
+            JsonGenerator generator = factory().createGenerator(out, JsonEncoding.UTF8);
+            // The transport closes the stream when it's done with it
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            try
+            {
+                source.writeTo(generator);
+            }
+            finally
+            {
+                generator.close();
+            }
+        };
+    }
+    
+    /**
+     * The JSON as a String; for logging, and for commands whose body is 
+     * needed as a key.
+     */
+    public static String toString(JsonSource source) throws JsonProcessingException
+    {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = factory().createGenerator(writer))
+        {
+            source.writeTo(generator);
+        }
+        catch (JsonProcessingException ex)
+        {
+            throw ex;
+        }
+        catch (IOException ex)
+        {
+            // A StringWriter doesn't throw
+            throw new IllegalStateException(ex);
+        }
+        return writer.toString();
+    }
+}
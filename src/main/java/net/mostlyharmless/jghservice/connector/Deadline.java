@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Time budget for everything done on behalf of one webhook event.
+ * 
+ * The deadline is started when the event arrives and passed along with 
+ * every command executed for it. Socket timeouts are cut down to what's 
+ * left of the budget, and once it's used up commands aren't sent at all; 
+ * each one that didn't get to run (or didn't finish) is recorded so the 
+ * webhook can report what was left undone.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class Deadline
+{
+    /** A deadline that never expires. Nothing is recorded against it. */
+    public static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+    
+    private final long expiresAt;
+    private final List<String> incomplete = new ArrayList<>();
+    
+    private Deadline(long expiresAt)
+    {
+        this.expiresAt = expiresAt;
+    }
+    
+    public static Deadline after(long millis)
+    {
+        return new Deadline(System.currentTimeMillis() + millis);
+    }
+    
+    /**
+     * Milliseconds left, or 0 if the deadline has passed.
+     */
+    public long remaining()
+    {
+        if (this == NONE)
+        {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, expiresAt - System.currentTimeMillis());
+    }
+    
+    public boolean isExpired()
+    {
+        return remaining() == 0;
+    }
+    
+    /**
+     * Caps a configured timeout to the time remaining. 
+     */
+    public int timeout(int configured)
+    {
+        return (int) Math.max(1, Math.min(configured, remaining()));
+    }
+    
+    public void check() throws DeadlineExceededException
+    {
+        if (isExpired())
+        {
+            throw new DeadlineExceededException();
+        }
+    }
+    
+    public void recordIncomplete(String description)
+    {
+        if (this != NONE)
+        {
+            synchronized (incomplete)
+            {
+                incomplete.add(description);
+            }
+        }
+    }
+    
+    public List<String> getIncomplete()
+    {
+        synchronized (incomplete)
+        {
+            return Collections.unmodifiableList(new ArrayList<>(incomplete));
+        }
+    }
+}
@@ -0,0 +1,520 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import net.mostlyharmless.jghservice.resources.ServiceConfig;
+
+/**
+ * Sends a second copy of a slow read and takes whichever answer comes 
+ * back first.
+ * 
+ * The latency of recent calls is kept per kind of request (e.g. per 
+ * command class). Once there are enough of them, a call that hasn't 
+ * finished by the configured percentile of that latency is hedged: the 
+ * same attempt is started again alongside it, and the first to succeed 
+ * wins. The loser is left to finish in the background; its response is 
+ * read and dropped so the connection goes back to the pool. Only use this
+ * for requests that are safe to send twice.
+ * 
+ * Hedges are limited by a budget the same way retries are: each call 
+ * earns a fraction of a hedge and each hedge spends one, which caps the 
+ * extra load at roughly that fraction even when the upstream slows down 
+ * across the board.
+ * 
+ * Calls that might be hedged run on a pool of at most maxThreads threads.
+ * When they're all busy a call is simply made on the caller's thread, 
+ * unhedged, rather than queueing or starting more threads.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class Hedger
+{
+    private final String name;
+    private final boolean enabled;
+    private final int percentile;
+    private final int windowSize;
+    private final int minSamples;
+    private final long minDelay;
+    private final double budgetRatio;
+    private final double budgetMax;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, Latencies> latencies = new ConcurrentHashMap<>();
+    
+    // guarded by this
+    private double budget;
+    
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+    private final AtomicLong saturated = new AtomicLong();
+    
+    private Hedger(Builder builder)
+    {
+        this.name = builder.name;
+        this.enabled = builder.enabled;
+        this.percentile = builder.percentile;
+        this.windowSize = builder.windowSize;
+        this.minSamples = builder.minSamples;
+        this.minDelay = builder.minDelay;
+        this.budgetRatio = builder.budgetRatio;
+        this.budgetMax = builder.budgetMax;
+        this.budget = budgetMax;
+        
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, builder.maxThreads, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), r -> 
+            {
+                Thread t = new Thread(r, name + "-hedge-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+    }
+    
+    /**
+     * @param key what the latency is tracked by; calls with the same key 
+     * should be expected to take about as long as each other
+     */
+    public <T> T execute(String key, Deadline deadline, Attempt<T> attempt) 
+        throws IOException, UnexpectedResponseException
+    {
+        calls.incrementAndGet();
+        deposit();
+        Latencies window = latencies.computeIfAbsent(key, k -> new Latencies(windowSize));
+        long threshold = enabled ? window.threshold() : -1;
+        if (threshold < 0 || threshold >= deadline.remaining())
+        {
+            // Not enough history yet (or not enough time left to bother); 
+            // no need for another thread.
+            return timed(window, attempt);
+        }
+        
+        CompletableFuture<T> primary;
+        try
+        {
+            primary = launch(window, attempt);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // Every thread is busy; send it without a hedge
+            saturated.incrementAndGet();
+            return timed(window, attempt);
+        }
+        
+        try
+        {
+            return primary.get(threshold, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex)
+        {
+            // Slower than it should be; fall through and hedge
+        }
+        catch (ExecutionException ex)
+        {
+            throw unwrap(ex.getCause());
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException(ex);
+        }
+        
+        if (!withdraw())
+        {
+            budgetExhausted.incrementAndGet();
+            return await(primary, deadline);
+        }
+        
+        CompletableFuture<T> hedge;
+        try
+        {
+            hedge = launch(window, attempt);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            refund();
+            saturated.incrementAndGet();
+            return await(primary, deadline);
+        }
+        hedged.incrementAndGet();
+        return await(firstSuccess(primary, hedge), deadline);
+    }
+    
+    private <T> T timed(Latencies window, Attempt<T> attempt) 
+        throws IOException, UnexpectedResponseException
+    {
+        long start = System.nanoTime();
+        T result = attempt.run();
+        window.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+    
+    /**
+     * @throws RejectedExecutionException if every thread is busy
+     */
+    private <T> CompletableFuture<T> launch(final Latencies window, final Attempt<T> attempt)
+    {
+        if (executor.isShutdown())
+        {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("Hedger " + name + " is shut down"));
+            return future;
+        }
+        return CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return timed(window, attempt);
+            }
+            catch (IOException | UnexpectedResponseException ex)
+            {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+    
+    /**
+     * Completes with the first of the two to succeed, or with the 
+     * primary's failure if neither does.
+     */
+    private <T> CompletableFuture<T> firstSuccess(final CompletableFuture<T> primary, 
+                                                  final CompletableFuture<T> hedge)
+    {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicInteger failures = new AtomicInteger();
+        primary.whenComplete((value, ex) -> 
+        {
+            if (ex == null)
+            {
+                result.complete(value);
+            }
+            else if (failures.incrementAndGet() == 2)
+            {
+                result.completeExceptionally(ex);
+            }
+        });
+        hedge.whenComplete((value, ex) -> 
+        {
+            if (ex == null)
+            {
+                if (result.complete(value))
+                {
+                    hedgeWins.incrementAndGet();
+                }
+            }
+            else if (failures.incrementAndGet() == 2)
+            {
+                // The primary's failure is the more telling one
+                primary.whenComplete((v, primaryEx) -> result.completeExceptionally(primaryEx));
+            }
+        });
+        return result;
+    }
+    
+    private <T> T await(CompletableFuture<T> future, Deadline deadline) 
+        throws IOException, UnexpectedResponseException
+    {
+        try
+        {
+            return future.get(deadline.remaining(), TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException ex)
+        {
+            throw unwrap(ex.getCause());
+        }
+        catch (TimeoutException ex)
+        {
+            throw new DeadlineExceededException(ex);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException(ex);
+        }
+    }
+    
+    private static IOException unwrap(Throwable cause) throws UnexpectedResponseException
+    {
+        if (cause instanceof CompletionException && cause.getCause() != null)
+        {
+            cause = cause.getCause();
+        }
+        if (cause instanceof UnexpectedResponseException)
+        {
+            throw (UnexpectedResponseException) cause;
+        }
+        if (cause instanceof IOException)
+        {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException)
+        {
+            throw (RuntimeException) cause;
+        }
+        return new IOException(cause);
+    }
+    
+    private synchronized void deposit()
+    {
+        budget = Math.min(budgetMax, budget + budgetRatio);
+    }
+    
+    private synchronized boolean withdraw()
+    {
+        if (budget >= 1)
+        {
+            budget--;
+            return true;
+        }
+        return false;
+    }
+    
+    private synchronized void refund()
+    {
+        budget = Math.min(budgetMax, budget + 1);
+    }
+    
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+    
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+    
+    public synchronized double getBudget()
+    {
+        return budget;
+    }
+    
+    public long getCalls()
+    {
+        return calls.get();
+    }
+    
+    /**
+     * Number of calls a second copy was sent for.
+     */
+    public long getHedged()
+    {
+        return hedged.get();
+    }
+    
+    /**
+     * Number of hedges that came back before the call they were hedging.
+     */
+    public long getHedgeWins()
+    {
+        return hedgeWins.get();
+    }
+    
+    /**
+     * Number of calls that would have been hedged but for the budget.
+     */
+    public long getBudgetExhausted()
+    {
+        return budgetExhausted.get();
+    }
+    
+    /**
+     * Number of calls sent unhedged because every hedging thread was busy.
+     */
+    public long getSaturated()
+    {
+        return saturated.get();
+    }
+    
+    /**
+     * The current hedging delay for each key, in milliseconds; -1 while 
+     * there isn't enough history to hedge it.
+     */
+    public Map<String, Long> getThresholds()
+    {
+        Map<String, Long> thresholds = new TreeMap<>();
+        for (Map.Entry<String, Latencies> entry : latencies.entrySet())
+        {
+            thresholds.put(entry.getKey(), entry.getValue().threshold());
+        }
+        return thresholds;
+    }
+    
+    /**
+     * The last few latencies for one key, and the percentile of them to 
+     * hedge at. The percentile is only worked out again after a number of
+     * new samples.
+     */
+    private class Latencies
+    {
+        private final long[] samples;
+        private int next;
+        private int count;
+        private int sinceComputed;
+        private long threshold = -1;
+        
+        Latencies(int size)
+        {
+            this.samples = new long[size];
+        }
+        
+        synchronized void record(long millis)
+        {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            sinceComputed++;
+        }
+        
+        synchronized long threshold()
+        {
+            if (count < minSamples)
+            {
+                return -1;
+            }
+            if (threshold < 0 || sinceComputed >= Math.max(1, samples.length / 10))
+            {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+                threshold = Math.max(minDelay, sorted[Math.max(0, index)]);
+                sinceComputed = 0;
+            }
+            return threshold;
+        }
+    }
+    
+    public static class Builder
+    {
+        private final String name;
+        private boolean enabled = true;
+        private int percentile = ServiceConfig.Hedge.DEFAULT_PERCENTILE;
+        private int windowSize = ServiceConfig.Hedge.DEFAULT_WINDOW_SIZE;
+        private int minSamples = ServiceConfig.Hedge.DEFAULT_MIN_SAMPLES;
+        private long minDelay = ServiceConfig.Hedge.DEFAULT_MIN_DELAY;
+        private double budgetRatio = ServiceConfig.Hedge.DEFAULT_BUDGET_RATIO;
+        private double budgetMax = ServiceConfig.Hedge.DEFAULT_BUDGET_MAX;
+        private int maxThreads = ServiceConfig.Hedge.DEFAULT_MAX_THREADS;
+        
+        public Builder(String name)
+        {
+            this.name = name;
+        }
+        
+        public Builder withEnabled(boolean enabled)
+        {
+            this.enabled = enabled;
+            return this;
+        }
+        
+        /**
+         * @param percentile calls slower than this percentile of recent 
+         * latency are hedged
+         */
+        public Builder withPercentile(int percentile)
+        {
+            this.percentile = percentile;
+            return this;
+        }
+        
+        /**
+         * @param windowSize how many recent latencies to keep per key
+         * @param minSamples how many are needed before hedging starts
+         */
+        public Builder withWindow(int windowSize, int minSamples)
+        {
+            this.windowSize = windowSize;
+            this.minSamples = minSamples;
+            return this;
+        }
+        
+        /**
+         * @param minDelay never hedge sooner than this (ms)
+         */
+        public Builder withMinDelay(long minDelay)
+        {
+            this.minDelay = minDelay;
+            return this;
+        }
+        
+        /**
+         * @param budgetRatio hedges earned per call
+         * @param budgetMax most hedges that can be banked
+         */
+        public Builder withBudget(double budgetRatio, double budgetMax)
+        {
+            this.budgetRatio = budgetRatio;
+            this.budgetMax = budgetMax;
+            return this;
+        }
+        
+        /**
+         * @param maxThreads most calls (and hedges) in flight on the 
+         * hedging pool at once
+         */
+        public Builder withMaxThreads(int maxThreads)
+        {
+            this.maxThreads = maxThreads;
+            return this;
+        }
+        
+        public Builder withHedge(ServiceConfig.Hedge hedge)
+        {
+            this.enabled = hedge.isEnabled();
+            this.percentile = hedge.getPercentile();
+            this.windowSize = hedge.getWindowSize();
+            this.minSamples = hedge.getMinSamples();
+            this.minDelay = hedge.getMinDelay();
+            this.budgetRatio = hedge.getBudgetRatio();
+            this.budgetMax = hedge.getBudgetMax();
+            this.maxThreads = hedge.getMaxThreads();
+            return this;
+        }
+        
+        public Hedger build()
+        {
+            if (percentile < 1 || percentile > 100)
+            {
+                throw new IllegalStateException("percentile must be between 1 and 100.");
+            }
+            if (windowSize < 1 || minSamples < 1 || minSamples > windowSize)
+            {
+                throw new IllegalStateException("minSamples must be between 1 and windowSize.");
+            }
+            if (maxThreads < 1)
+            {
+                throw new IllegalStateException("maxThreads must be at least 1.");
+            }
+            return new Hedger(this);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+
+/**
+ * HTTP/2 over OkHttp.
+ * 
+ * Requests to the host share one connection, each on a stream of its own, 
+ * up to maxStreams at once. h2 is negotiated via ALPN during the TLS 
+ * handshake; if the host (or the JVM) doesn't support it the connection 
+ * is HTTP/1.1 and, as with {@link UrlConnectionTransport}, each request in
+ * flight needs its own connection and maxConnections applies instead. 
+ * Until a response has said which it is, the lower limit is used.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+final class Http2Transport extends HttpTransport
+{
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    
+    private final OkHttpClient client;
+    private final Semaphore streams;
+    private volatile boolean multiplexed;
+    
+    Http2Transport(Builder builder)
+    {
+        super(builder);
+        this.streams = new Semaphore(maxStreams, true);
+        this.client = new OkHttpClient.Builder()
+            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .connectionPool(new ConnectionPool(getMaxConnections(), 
+                                               KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            // Whether to try again is up to the RetryPolicy
+            .retryOnConnectionFailure(false)
+            .build();
+    }
+
+    @Override
+    public String getProtocol()
+    {
+        return HTTP_2;
+    }
+    
+    /**
+     * Whether the host is known to have negotiated HTTP/2.
+     */
+    public boolean isMultiplexed()
+    {
+        return multiplexed;
+    }
+    
+    @Override
+    public void shutdown()
+    {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    @Override
+    protected Semaphore acquire(URL url, Deadline deadline) throws IOException
+    {
+        return multiplexed ? acquire(streams, url, deadline) : super.acquire(url, deadline);
+    }
+
+    @Override
+    protected <T> T exchange(Request request, Deadline deadline, ResponseHandler<T> handler)
+        throws IOException, UnexpectedResponseException
+    {
+        // Shares the connection pool; only the timeouts differ per call
+        final AtomicBoolean connected = new AtomicBoolean();
+        OkHttpClient call = client.newBuilder()
+            .connectTimeout(deadline.timeout(connectTimeout), TimeUnit.MILLISECONDS)
+            .readTimeout(deadline.timeout(readTimeout), TimeUnit.MILLISECONDS)
+            .writeTimeout(deadline.timeout(readTimeout), TimeUnit.MILLISECONDS)
+            .eventListener(new EventListener()
+            {
+                @Override
+                public void connectionAcquired(Call call, Connection connection)
+                {
+                    connected.set(true);
+                }
+            })
+            .build();
+        
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder()
+            .url(request.getUrl())
+            .header("Authorization", authorization);
+        if (userAgent != null)
+        {
+            builder.header("User-Agent", userAgent);
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+        {
+            builder.header(header.getKey(), header.getValue());
+        }
+        
+        RequestBody body = null;
+        if (request.getBody() != null)
+        {
+            body = new StreamingBody(request.getBody());
+        }
+        else if (requiresBody(request.getMethod()))
+        {
+            body = RequestBody.create(null, new byte[0]);
+        }
+        builder.method(request.getMethod(), body);
+        
+        try (okhttp3.Response response = call.newCall(builder.build()).execute())
+        {
+            multiplexed = response.protocol() == Protocol.HTTP_2;
+            ResponseBody responseBody = response.body();
+            InputStream is = responseBody == null 
+                ? new ByteArrayInputStream(new byte[0]) : responseBody.byteStream();
+            return handle(response.code(), response.message(), 
+                          response.headers().toMultimap(), is, handler);
+        }
+        catch (SocketTimeoutException ex)
+        {
+            // OkHttp doesn't tell a connect timeout from a read timeout; as
+            // with UrlConnectionTransport, the former means the request 
+            // was never sent.
+            if (connected.get())
+            {
+                throw ex;
+            }
+            if (deadline.isExpired())
+            {
+                throw new DeadlineExceededException(ex);
+            }
+            ConnectException ce = 
+                new ConnectException("Timed out connecting to " + request.getUrl().getHost());
+            ce.initCause(ex);
+            throw ce;
+        }
+    }
+    
+    /**
+     * OkHttp refuses these without a body, even an empty one.
+     */
+    private static boolean requiresBody(String method)
+    {
+        return method.equals("POST") || method.equals("PUT") || method.equals("PATCH");
+    }
+    
+    private static class StreamingBody extends RequestBody
+    {
+        private final Body body;
+        
+        StreamingBody(Body body)
+        {
+            this.body = body;
+        }
+        
+        @Override
+        public MediaType contentType()
+        {
+            return JSON;
+        }
+
+        @Override
+        public long contentLength()
+        {
+            return body.getContentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException
+        {
+            // OkHttp owns the sink; the body mustn't close it
+            body.writeTo(sink.outputStream());
+        }
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.xml.bind.DatatypeConverter;
+import net.mostlyharmless.jghservice.resources.ServiceConfig;
+
+/**
+ * Shared HTTP transport for a single upstream host.
+ *
+ * One instance is created per upstream (JIRA, Github) and shared by every
+ * request. The number of requests in flight to the host at any one time
+ * is capped; callers wait (up to the connect timeout) for a free slot.
+ * How the bytes get there depends on the protocol the transport was built
+ * for: HTTP/1.1 over the JDK's HttpURLConnection, or HTTP/2 with every
+ * request multiplexed over one connection.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public abstract class HttpTransport
+{
+    public static final String HTTP_1_1 = "http/1.1";
+    public static final String HTTP_2 = "h2";
+    
+    private final String apiUrlBase;
+    protected final String authorization;
+    protected final String userAgent;
+    protected final int connectTimeout;
+    protected final int readTimeout;
+    protected final int maxStreams;
+    private final int maxConnections;
+    private final Semaphore connections;
+
+    protected HttpTransport(Builder builder)
+    {
+        this.apiUrlBase = builder.apiUrlBase;
+        this.authorization = builder.authorization;
+        this.userAgent = builder.userAgent;
+        this.connectTimeout = builder.connectTimeout;
+        this.readTimeout = builder.readTimeout;
+        this.maxConnections = builder.maxConnections;
+        this.maxStreams = builder.maxStreams;
+        this.connections = new Semaphore(maxConnections, true);
+    }
+
+    public String getApiUrlBase()
+    {
+        return apiUrlBase;
+    }
+
+    public int getMaxConnections()
+    {
+        return maxConnections;
+    }
+
+    public int getAvailableConnections()
+    {
+        return connections.availablePermits();
+    }
+    
+    /**
+     * The protocol this transport was configured for; {@link #HTTP_2} may 
+     * still end up speaking HTTP/1.1 to a host that doesn't offer h2.
+     */
+    public abstract String getProtocol();
+    
+    /**
+     * Releases whatever the transport holds open (pooled connections, 
+     * threads). 
+     */
+    public void shutdown()
+    {
+    }
+
+    public <T> T execute(Request request, ResponseHandler<T> handler)
+        throws IOException, UnexpectedResponseException
+    {
+        return execute(request, Deadline.NONE, handler);
+    }
+    
+    /**
+     * Performs one exchange with the host. The handler is given the response
+     * while the connection is still open so the body can be decoded as it is
+     * read; whatever the handler leaves unread is drained afterwards.
+     * 
+     * Neither waiting for a connection nor the socket timeouts are allowed 
+     * to run past the deadline. 
+     */
+    public <T> T execute(Request request, Deadline deadline, ResponseHandler<T> handler)
+        throws IOException, UnexpectedResponseException
+    {
+        deadline.check();
+        Semaphore permits = acquire(request.getUrl(), deadline);
+        try
+        {
+            return exchange(request, deadline, handler);
+        }
+        catch (SocketTimeoutException ex)
+        {
+            // If the timeout was cut short by the deadline it's the deadline
+            // that ran out, not the host that failed.
+            if (deadline.isExpired())
+            {
+                throw new DeadlineExceededException(ex);
+            }
+            throw ex;
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+    
+    /**
+     * Sends the request and hands the response to the handler (see 
+     * {@link #handle}). Socket timeouts are to be cut short by the deadline.
+     */
+    protected abstract <T> T exchange(Request request, Deadline deadline, 
+                                      ResponseHandler<T> handler)
+        throws IOException, UnexpectedResponseException;
+
+    /**
+     * Waits for a slot to send a request in, returning the semaphore it was
+     * taken from so it can be given back.
+     */
+    protected Semaphore acquire(URL url, Deadline deadline) throws IOException
+    {
+        return acquire(connections, url, deadline);
+    }
+    
+    protected final Semaphore acquire(Semaphore permits, URL url, Deadline deadline) 
+        throws IOException
+    {
+        try
+        {
+            if (!permits.tryAcquire(deadline.timeout(connectTimeout), TimeUnit.MILLISECONDS))
+            {
+                deadline.check();
+                throw new IOException("Timed out waiting for a connection to " + url.getHost());
+            }
+            return permits;
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a connection to " + url.getHost());
+        }
+    }
+    
+    /**
+     * Gives the response to the handler and drains whatever it leaves 
+     * unread; closing the body is up to the caller.
+     */
+    protected static <T> T handle(int responseCode, String responseMessage, 
+                                  Map<String, List<String>> headers, InputStream body,
+                                  ResponseHandler<T> handler)
+        throws IOException, UnexpectedResponseException
+    {
+        T result = handler.handleResponse(
+            new Response(responseCode, responseMessage, headers, Streams.uncloseable(body)));
+        Streams.drain(body);
+        return result;
+    }
+
+    /**
+     * Writes a request body to the connection. It may be asked to more than
+     * once (e.g. when the request is retried), so it must be able to write 
+     * the same bytes again each time.
+     */
+    public interface Body
+    {
+        void writeTo(OutputStream out) throws IOException;
+        
+        /**
+         * The length in bytes if it's known up front, otherwise -1 and the
+         * body is sent chunked.
+         */
+        default long getContentLength()
+        {
+            return -1;
+        }
+    }
+    
+    public static class Request
+    {
+        private final String method;
+        private final URL url;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private Body body;
+        
+        public Request(String method, URL url)
+        {
+            this.method = method;
+            this.url = url;
+        }
+        
+        public Request withHeader(String name, String value)
+        {
+            headers.put(name, value);
+            return this;
+        }
+        
+        public Request withJson(String json)
+        {
+            if (json == null)
+            {
+                this.body = null;
+                return this;
+            }
+            
+            final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            this.body = new Body()
+            {
+                @Override
+                public void writeTo(OutputStream out) throws IOException
+                {
+                    out.write(bytes);
+                }
+
+                @Override
+                public long getContentLength()
+                {
+                    return bytes.length;
+                }
+            };
+            return this;
+        }
+        
+        /**
+         * A JSON body (UTF-8) generated as it's sent.
+         */
+        public Request withBody(Body body)
+        {
+            this.body = body;
+            return this;
+        }
+
+        public String getMethod()
+        {
+            return method;
+        }
+
+        public URL getUrl()
+        {
+            return url;
+        }
+
+        public Map<String, String> getHeaders()
+        {
+            return headers;
+        }
+
+        public Body getBody()
+        {
+            return body;
+        }
+    }
+
+    public interface ResponseHandler<T>
+    {
+        T handleResponse(Response response) throws IOException, UnexpectedResponseException;
+    }
+
+    public static class Response
+    {
+        private final int responseCode;
+        private final String responseMessage;
+        private final Map<String, List<String>> headers;
+        private final InputStream body;
+
+        Response(int responseCode, String responseMessage,
+                 Map<String, List<String>> headers, InputStream body)
+        {
+            this.responseCode = responseCode;
+            this.responseMessage = responseMessage;
+            this.headers = headers == null
+                ? Collections.<String, List<String>>emptyMap() : headers;
+            this.body = body;
+        }
+
+        public int getResponseCode()
+        {
+            return responseCode;
+        }
+
+        public String getResponseMessage()
+        {
+            return responseMessage;
+        }
+
+        public String getHeader(String name)
+        {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet())
+            {
+                if (name.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty())
+                {
+                    return entry.getValue().get(0);
+                }
+            }
+            return null;
+        }
+
+        public InputStream getBody()
+        {
+            return body;
+        }
+        
+        public String getBodyAsString() throws IOException
+        {
+            return Streams.readFully(body);
+        }
+        
+        /**
+         * Returns a copy of this response with its body replaced, e.g. by a
+         * buffered copy of the original.
+         */
+        public Response withBody(InputStream body)
+        {
+            return new Response(responseCode, responseMessage, headers, body);
+        }
+    }
+
+    public static class Builder
+    {
+        private String apiUrlBase;
+        private String authorization;
+        private String userAgent;
+        private int connectTimeout = ServiceConfig.Connection.DEFAULT_CONNECT_TIMEOUT;
+        private int readTimeout = ServiceConfig.Connection.DEFAULT_READ_TIMEOUT;
+        private int maxConnections = ServiceConfig.Connection.DEFAULT_MAX_CONNECTIONS;
+        private String protocol = HTTP_1_1;
+        private int maxStreams = ServiceConfig.Connection.DEFAULT_MAX_STREAMS;
+
+        public Builder withApiUrlBase(String apiUrlBase)
+        {
+            if (!apiUrlBase.endsWith("/"))
+            {
+                apiUrlBase = apiUrlBase + "/";
+            }
+            this.apiUrlBase = apiUrlBase;
+            return this;
+        }
+
+        public Builder withCredentials(String username, String password)
+        {
+            this.authorization = "Basic " +
+                DatatypeConverter.printBase64Binary((username + ":" + password).getBytes());
+            return this;
+        }
+
+        public Builder withUserAgent(String userAgent)
+        {
+            this.userAgent = userAgent;
+            return this;
+        }
+
+        public Builder withConnectTimeout(int connectTimeout)
+        {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder withReadTimeout(int readTimeout)
+        {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public Builder withMaxConnections(int maxConnections)
+        {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * {@link #HTTP_1_1} (the default) or {@link #HTTP_2}.
+         */
+        public Builder withProtocol(String protocol)
+        {
+            this.protocol = protocol;
+            return this;
+        }
+        
+        /**
+         * Most requests to have in flight at once over an HTTP/2 
+         * connection.
+         */
+        public Builder withMaxStreams(int maxStreams)
+        {
+            this.maxStreams = maxStreams;
+            return this;
+        }
+
+        public Builder withConnection(ServiceConfig.Connection connection)
+        {
+            this.connectTimeout = connection.getConnectTimeout();
+            this.readTimeout = connection.getReadTimeout();
+            this.maxConnections = connection.getMaxConnections();
+            this.protocol = connection.getProtocol();
+            this.maxStreams = connection.getMaxStreams();
+            return this;
+        }
+
+        public HttpTransport build()
+        {
+            if (apiUrlBase == null || authorization == null)
+            {
+                throw new IllegalStateException("URL and credentials are required.");
+            }
+            if (maxConnections < 1 || maxStreams < 1)
+            {
+                throw new IllegalStateException("maxConnections and maxStreams must be at least 1.");
+            }
+            if (HTTP_2.equals(protocol))
+            {
+                return new Http2Transport(this);
+            }
+            if (HTTP_1_1.equals(protocol))
+            {
+                return new UrlConnectionTransport(this);
+            }
+            throw new IllegalStateException("Unknown protocol: " + protocol);
+        }
+    }
+}
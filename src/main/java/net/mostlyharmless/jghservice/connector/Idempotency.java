@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+/**
+ * How safe it is to send a command again when we don't know whether the 
+ * first attempt was acted on.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public enum Idempotency
+{
+    /** Reads; no side effects at all. */
+    SAFE(true),
+    /** Writes that leave the same state no matter how often they're sent. */
+    IDEMPOTENT(true),
+    /** Writes that create something each time they're sent. */
+    NON_IDEMPOTENT(false);
+    
+    private final boolean retryable;
+    
+    private Idempotency(boolean retryable)
+    {
+        this.retryable = retryable;
+    }
+    
+    /**
+     * Whether a request may be sent again after a failure that happened once
+     * it was on the wire (a read timeout, a reset connection, a 5xx). 
+     * Any request may be sent again if it never made it to the host.
+     */
+    public boolean isRetryable()
+    {
+        return retryable;
+    }
+    
+    public static Idempotency forMethod(String method)
+    {
+        switch (method)
+        {
+            case "GET":
+            case "HEAD":
+                return SAFE;
+            case "PUT":
+            case "DELETE":
+                return IDEMPOTENT;
+            default:
+                return NON_IDEMPOTENT;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.io.IOException;
+
+/**
+ * The upstream's rate limit kept the request from being sent: either the 
+ * wait for it was longer than we're prepared to park for, or it was 
+ * refused as rate limited too many times. Not worth retrying; the wait 
+ * has already been as long as it's allowed to be.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class RateLimitExceededException extends IOException
+{
+    public RateLimitExceededException(String message)
+    {
+        super(message);
+    }
+    
+    public RateLimitExceededException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
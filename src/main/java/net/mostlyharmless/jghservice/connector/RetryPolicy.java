@@ -0,0 +1,258 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.mostlyharmless.jghservice.resources.ServiceConfig;
+
+/**
+ * Sends a request again when it fails in a way that's worth retrying.
+ * 
+ * What's retried depends on the command's {@link Idempotency}: reads and
+ * idempotent writes are retried on any I/O failure, a 429 or a 5xx; 
+ * anything else only when the connection couldn't be made at all, since 
+ * then we know the host never saw it. Attempts are spaced with exponential
+ * backoff and full jitter.
+ * 
+ * Retries are also limited by a budget shared by every request going 
+ * through the policy: each request earns a fraction of a retry and each 
+ * retry spends one. When the upstream is failing across the board the 
+ * budget runs dry and requests fail on the first error instead of 
+ * multiplying the load on it.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class RetryPolicy
+{
+    private static final Logger LOGGER = Logger.getLogger(RetryPolicy.class.getName());
+    
+    private final int maxAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final double budgetRatio;
+    private final double budgetMax;
+    
+    // guarded by this
+    private double budget;
+    
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+    private final AtomicLong givenUp = new AtomicLong();
+    
+    private RetryPolicy(Builder builder)
+    {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelay = builder.baseDelay;
+        this.maxDelay = builder.maxDelay;
+        this.budgetRatio = builder.budgetRatio;
+        this.budgetMax = builder.budgetMax;
+        this.budget = budgetMax;
+    }
+    
+    public <T> T execute(Idempotency idempotency, Deadline deadline, Attempt<T> attempt) 
+        throws IOException, UnexpectedResponseException
+    {
+        deposit();
+        for (int attemptNumber = 1; ; attemptNumber++)
+        {
+            try
+            {
+                return attempt.run();
+            }
+            catch (IOException | UnexpectedResponseException ex)
+            {
+                if (ex instanceof CircuitOpenException 
+                    || ex instanceof DeadlineExceededException
+                    || ex instanceof RateLimitExceededException
+                    || !isRetryable(idempotency, ex))
+                {
+                    throw ex;
+                }
+                if (attemptNumber >= maxAttempts)
+                {
+                    givenUp.incrementAndGet();
+                    throw ex;
+                }
+                if (!withdraw())
+                {
+                    budgetExhausted.incrementAndGet();
+                    throw ex;
+                }
+                
+                long delay = backoff(attemptNumber);
+                if (delay >= deadline.remaining())
+                {
+                    throw ex;
+                }
+                
+                retries.incrementAndGet();
+                LOGGER.log(Level.INFO, "Retrying in " + delay + "ms after: " + ex.getMessage());
+                sleep(delay);
+            }
+        }
+    }
+    
+    private boolean isRetryable(Idempotency idempotency, Exception ex)
+    {
+        if (ex instanceof ConnectException 
+            || ex instanceof NoRouteToHostException
+            || ex instanceof UnknownHostException)
+        {
+            return true;
+        }
+        
+        if (!idempotency.isRetryable())
+        {
+            return false;
+        }
+        
+        if (ex instanceof UnexpectedResponseException)
+        {
+            int code = ((UnexpectedResponseException)ex).getResponseCode();
+            return code == 429 || (code >= 500 && code != 501);
+        }
+        
+        // A plain InterruptedIOException means we were interrupted, not that
+        // a socket timed out.
+        return ex.getClass() != InterruptedIOException.class;
+    }
+    
+    private long backoff(int attemptNumber)
+    {
+        long ceiling = Math.min(maxDelay, baseDelay << Math.min(attemptNumber - 1, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+    
+    private void sleep(long delay) throws InterruptedIOException
+    {
+        try
+        {
+            Thread.sleep(delay);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to retry");
+        }
+    }
+    
+    private synchronized void deposit()
+    {
+        budget = Math.min(budgetMax, budget + budgetRatio);
+    }
+    
+    private synchronized boolean withdraw()
+    {
+        if (budget >= 1)
+        {
+            budget--;
+            return true;
+        }
+        return false;
+    }
+    
+    public synchronized double getBudget()
+    {
+        return budget;
+    }
+    
+    public long getRetries()
+    {
+        return retries.get();
+    }
+    
+    /**
+     * Number of failures that would have been retried but for the budget.
+     */
+    public long getBudgetExhausted()
+    {
+        return budgetExhausted.get();
+    }
+    
+    /**
+     * Number of requests that failed on every attempt.
+     */
+    public long getGivenUp()
+    {
+        return givenUp.get();
+    }
+    
+    public static class Builder
+    {
+        private int maxAttempts = ServiceConfig.Retry.DEFAULT_MAX_ATTEMPTS;
+        private long baseDelay = ServiceConfig.Retry.DEFAULT_BASE_DELAY;
+        private long maxDelay = ServiceConfig.Retry.DEFAULT_MAX_DELAY;
+        private double budgetRatio = ServiceConfig.Retry.DEFAULT_BUDGET_RATIO;
+        private double budgetMax = ServiceConfig.Retry.DEFAULT_BUDGET_MAX;
+        
+        public Builder withMaxAttempts(int maxAttempts)
+        {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+        
+        public Builder withBaseDelay(long baseDelay)
+        {
+            this.baseDelay = baseDelay;
+            return this;
+        }
+        
+        public Builder withMaxDelay(long maxDelay)
+        {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+        
+        /**
+         * @param budgetRatio retries earned per request
+         * @param budgetMax most retries that can be banked
+         */
+        public Builder withBudget(double budgetRatio, double budgetMax)
+        {
+            this.budgetRatio = budgetRatio;
+            this.budgetMax = budgetMax;
+            return this;
+        }
+        
+        public Builder withRetry(ServiceConfig.Retry retry)
+        {
+            this.maxAttempts = retry.getMaxAttempts();
+            this.baseDelay = retry.getBaseDelay();
+            this.maxDelay = retry.getMaxDelay();
+            this.budgetRatio = retry.getBudgetRatio();
+            this.budgetMax = retry.getBudgetMax();
+            return this;
+        }
+        
+        public RetryPolicy build()
+        {
+            if (maxAttempts < 1)
+            {
+                throw new IllegalStateException("maxAttempts must be at least 1.");
+            }
+            return new RetryPolicy(this);
+        }
+    }
+}
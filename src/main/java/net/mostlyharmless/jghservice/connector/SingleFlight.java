@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses identical read requests that are in flight at the same time 
+ * into one.
+ * 
+ * The first caller for a key makes the request; anyone asking for the 
+ * same key before it completes waits for it and gets the same decoded 
+ * result (or the same failure). Results are shared between threads, so 
+ * callers mustn't modify them. A waiter whose deadline runs out stops 
+ * waiting; if the request it was waiting on ran out of its own deadline, 
+ * the waiter tries again itself.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class SingleFlight
+{
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight =
+        new ConcurrentHashMap<>();
+    
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    
+    public <T> T execute(String key, Deadline deadline, Attempt<T> attempt) 
+        throws IOException, UnexpectedResponseException
+    {
+        while (true)
+        {
+            CompletableFuture<Object> mine = new CompletableFuture<>();
+            CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+            if (existing == null)
+            {
+                return lead(key, mine, attempt);
+            }
+            
+            coalesced.incrementAndGet();
+            try
+            {
+                @SuppressWarnings("unchecked")
+                T result = (T) existing.get(deadline.remaining(), TimeUnit.MILLISECONDS);
+                return result;
+            }
+            catch (ExecutionException ex)
+            {
+                Throwable cause = ex.getCause();
+                if (cause instanceof DeadlineExceededException)
+                {
+                    deadline.check();
+                    continue;
+                }
+                if (cause instanceof IOException)
+                {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof UnexpectedResponseException)
+                {
+                    throw (UnexpectedResponseException) cause;
+                }
+                throw new IOException(cause);
+            }
+            catch (TimeoutException ex)
+            {
+                throw new DeadlineExceededException(ex);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new DeadlineExceededException(ex);
+            }
+        }
+    }
+    
+    private <T> T lead(String key, CompletableFuture<Object> mine, Attempt<T> attempt) 
+        throws IOException, UnexpectedResponseException
+    {
+        executed.incrementAndGet();
+        try
+        {
+            T result = attempt.run();
+            mine.complete(result);
+            return result;
+        }
+        catch (IOException | UnexpectedResponseException | RuntimeException ex)
+        {
+            mine.completeExceptionally(ex);
+            throw ex;
+        }
+        finally
+        {
+            inFlight.remove(key, mine);
+            // In case of an Error; waiters shouldn't hang
+            if (!mine.isDone())
+            {
+                mine.completeExceptionally(new IOException("Request for " + key + " failed"));
+            }
+        }
+    }
+    
+    /**
+     * Number of requests actually sent.
+     */
+    public long getExecuted()
+    {
+        return executed.get();
+    }
+    
+    /**
+     * Number of callers that shared a request already in flight rather 
+     * than sending their own.
+     */
+    public long getCoalesced()
+    {
+        return coalesced.get();
+    }
+    
+    public int getInFlight()
+    {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public final class Streams
+{
+    private static final int BUFFER_SIZE = 8192;
+    
+    private Streams() {}
+    
+    /**
+     * Reads the stream to EOF as UTF-8. Unlike joining readLine() output
+     * this keeps line breaks intact.
+     */
+    public static String readFully(InputStream is) throws IOException
+    {
+        return new String(readBytes(is), StandardCharsets.UTF_8);
+    }
+    
+    public static byte[] readBytes(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = is.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+    
+    /**
+     * Reads and discards whatever is left in the stream.
+     */
+    public static void drain(InputStream is) throws IOException
+    {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (is.read(buffer) != -1)
+        {
+            // discard
+        }
+    }
+    
+    /**
+     * Wraps a stream so that closing the wrapper leaves the underlying 
+     * stream open. Used to hand a response body to code (e.g. a 
+     * JsonParser) that closes what it reads from, while the transport 
+     * still owns draining and closing the connection's stream.
+     */
+    public static InputStream uncloseable(InputStream is)
+    {
+        return new FilterInputStream(is)
+        {
+            @Override
+            public void close()
+            {
+                // The owner closes the real stream
+            }
+        };
+    }
+}
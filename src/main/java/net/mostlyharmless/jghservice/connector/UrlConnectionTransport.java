@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+
+/**
+ * HTTP/1.1 over the JDK's HttpURLConnection. 
+ * 
+ * The JDK keeps idle sockets in its keep-alive cache as long as the 
+ * response stream is read to the end and closed, so every exchange here is
+ * fully drained. Each request in flight needs a connection of its own, so 
+ * maxConnections is both the cap on sockets and on concurrent requests.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+final class UrlConnectionTransport extends HttpTransport
+{
+    UrlConnectionTransport(Builder builder)
+    {
+        super(builder);
+    }
+
+    @Override
+    public String getProtocol()
+    {
+        return HTTP_1_1;
+    }
+
+    @Override
+    protected <T> T exchange(Request request, Deadline deadline, ResponseHandler<T> handler)
+        throws IOException, UnexpectedResponseException
+    {
+        HttpURLConnection conn = (HttpURLConnection) request.getUrl().openConnection();
+        conn.setConnectTimeout(deadline.timeout(connectTimeout));
+        conn.setReadTimeout(deadline.timeout(readTimeout));
+        conn.setRequestMethod(request.getMethod());
+        conn.setRequestProperty("Authorization", authorization);
+        if (userAgent != null)
+        {
+            conn.setRequestProperty("User-Agent", userAgent);
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+        {
+            conn.setRequestProperty(header.getKey(), header.getValue());
+        }
+        Body body = request.getBody();
+        if (body != null)
+        {
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            // Either way the body goes straight to the socket rather than 
+            // being buffered whole by the connection first.
+            long length = body.getContentLength();
+            if (length >= 0)
+            {
+                conn.setFixedLengthStreamingMode(length);
+            }
+            else
+            {
+                conn.setChunkedStreamingMode(0);
+            }
+        }
+
+        connect(conn, deadline);
+
+        if (body != null)
+        {
+            try (OutputStream out = conn.getOutputStream())
+            {
+                body.writeTo(out);
+            }
+        }
+
+        int responseCode = conn.getResponseCode();
+        String responseMessage = conn.getResponseMessage();
+
+        InputStream is;
+        if (responseCode >= 400)
+        {
+            is = conn.getErrorStream();
+        }
+        else
+        {
+            is = conn.getInputStream();
+        }
+
+        if (is == null)
+        {
+            is = new ByteArrayInputStream(new byte[0]);
+        }
+
+        // Reading to EOF and closing is what lets the JDK return the 
+        // socket to the keep-alive cache rather than throwing it away.
+        try (InputStream responseBody = is)
+        {
+            return handle(responseCode, responseMessage, conn.getHeaderFields(), responseBody, handler);
+        }
+    }
+
+    /**
+     * Connects explicitly so a connect timeout can be told apart from a 
+     * read timeout; the former means the request was never sent.
+     */
+    private void connect(HttpURLConnection conn, Deadline deadline) throws IOException
+    {
+        try
+        {
+            conn.connect();
+        }
+        catch (SocketTimeoutException ex)
+        {
+            if (deadline.isExpired())
+            {
+                throw new DeadlineExceededException(ex);
+            }
+            ConnectException ce = 
+                new ConnectException("Timed out connecting to " + conn.getURL().getHost());
+            ce.initCause(ex);
+            throw ce;
+        }
+    }
+}
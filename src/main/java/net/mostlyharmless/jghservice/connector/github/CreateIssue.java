@@ -18,14 +18,15 @@ package net.mostlyharmless.jghservice.connector.github;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.LinkedList;
 import java.util.List;
+import net.mostlyharmless.jghservice.connector.Codecs;
 import net.mostlyharmless.jghservice.resources.ServiceConfig;
 
 /**
@@ -81,14 +82,19 @@ public class CreateIssue implements GithubCommand<Integer>
     @Override
     public String getJson() throws JsonProcessingException 
     {
-        return mapper.writeValueAsString(this);
+        return writer.writeValueAsString(this);
+    }
+    
+    @Override
+    public void writeBody(JsonGenerator generator) throws IOException
+    {
+        writer.writeValue(generator, this);
     }
     
     @Override
     public Integer processResponse(String json) throws IOException
     {
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode root = mapper.readTree(json);
+        JsonNode root = Codecs.treeReader().readTree(json);
         return root.get("number").asInt();
         
     }
@@ -156,12 +162,17 @@ public class CreateIssue implements GithubCommand<Integer>
         
         protected void validate()
         {
-            if (repo == null || title == null)
+            if (repo == null || (title == null && requiresTitle()))
             {
                 throw new IllegalStateException("Must have a repo and a title.");
             }
         }
         
+        protected boolean requiresTitle()
+        {
+            return true;
+        }
+        
         public CreateIssue build()
         {
             validate();
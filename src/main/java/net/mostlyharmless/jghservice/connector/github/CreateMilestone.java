@@ -17,12 +17,13 @@
 package net.mostlyharmless.jghservice.connector.github;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import net.mostlyharmless.jghservice.connector.Codecs;
 import net.mostlyharmless.jghservice.resources.ServiceConfig.Repository;
 
 /**
@@ -57,7 +58,13 @@ public class CreateMilestone implements GithubCommand<Integer>
     @Override
     public String getJson() throws JsonProcessingException
     {
-        return mapper.writeValueAsString(this);
+        return writer.writeValueAsString(this);
+    }
+    
+    @Override
+    public void writeBody(JsonGenerator generator) throws IOException
+    {
+        writer.writeValue(generator, this);
     }
 
     @Override
@@ -75,7 +82,7 @@ public class CreateMilestone implements GithubCommand<Integer>
     @Override
     public Integer processResponse(String jsonResponse) throws IOException
     {
-        JsonNode root = new ObjectMapper().readTree(jsonResponse);
+        JsonNode root = Codecs.treeReader().readTree(jsonResponse);
         return root.get("number").asInt();
     }
     
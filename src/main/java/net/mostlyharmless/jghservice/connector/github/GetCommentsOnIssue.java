@@ -18,12 +18,14 @@ package net.mostlyharmless.jghservice.connector.github;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.List;
-import net.mostlyharmless.jghservice.resources.ObjectMapperProvider;
+import net.mostlyharmless.jghservice.connector.Codecs;
 import net.mostlyharmless.jghservice.resources.ServiceConfig.Repository;
 import net.mostlyharmless.jghservice.resources.github.GithubEvent;
 
@@ -31,8 +33,11 @@ import net.mostlyharmless.jghservice.resources.github.GithubEvent;
  *
  * @author Brian Roach <roach at mostlyharmless dot net>
  */
-public class GetCommentsOnIssue implements GithubCommand<List<GithubEvent.Comment>>
+public class GetCommentsOnIssue implements PagedCommand<GithubEvent.Comment>
 {
+    private static final ObjectReader reader = 
+        Codecs.reader(new TypeReference<List<GithubEvent.Comment>>(){});
+    
     private final Repository repo;
     private final int issueNum;
     
@@ -51,7 +56,7 @@ public class GetCommentsOnIssue implements GithubCommand<List<GithubEvent.Commen
                         repo.getGithubName()+
                         "/issues/" +
                         issueNum +
-                        "/comments");
+                        "/comments?per_page=" + PER_PAGE);
     }
 
     @Override
@@ -75,10 +80,13 @@ public class GetCommentsOnIssue implements GithubCommand<List<GithubEvent.Commen
     @Override
     public List<GithubEvent.Comment> processResponse(String jsonResponse) throws IOException
     {
-        TypeReference<List<GithubEvent.Comment>> tr = 
-            new TypeReference<List<GithubEvent.Comment>>(){};
-        ObjectMapper m = new ObjectMapperProvider().getContext(GithubEvent.Comment.class);
-        return m.readValue(jsonResponse, tr);
+        return reader.readValue(jsonResponse);
+    }
+    
+    @Override
+    public List<GithubEvent.Comment> processResponse(InputStream response) throws IOException
+    {
+        return Collections.unmodifiableList(reader.<List<GithubEvent.Comment>>readValue(response));
     }
 
     public static class Builder
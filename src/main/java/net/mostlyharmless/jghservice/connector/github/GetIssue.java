@@ -17,11 +17,12 @@
 package net.mostlyharmless.jghservice.connector.github;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import net.mostlyharmless.jghservice.resources.ObjectMapperProvider;
+import net.mostlyharmless.jghservice.connector.Codecs;
 import net.mostlyharmless.jghservice.resources.ServiceConfig.Repository;
 import net.mostlyharmless.jghservice.resources.github.GithubEvent;
 
@@ -31,6 +32,8 @@ import net.mostlyharmless.jghservice.resources.github.GithubEvent;
  */
 public class GetIssue implements GithubCommand<GithubEvent.Issue>
 {
+    private static final ObjectReader reader = Codecs.reader(GithubEvent.Issue.class);
+    
     private final Repository repo;
     private final Integer issueNumber;
 
@@ -72,8 +75,13 @@ public class GetIssue implements GithubCommand<GithubEvent.Issue>
     @Override
     public GithubEvent.Issue processResponse(String jsonResponse) throws IOException
     {
-        ObjectMapper m = new ObjectMapperProvider().getContext(GithubEvent.Comment.class);
-        return m.readValue(jsonResponse, GithubEvent.Issue.class);
+        return reader.readValue(jsonResponse);
+    }
+    
+    @Override
+    public GithubEvent.Issue processResponse(InputStream response) throws IOException
+    {
+        return reader.readValue(response);
     }
     
     public static class Builder
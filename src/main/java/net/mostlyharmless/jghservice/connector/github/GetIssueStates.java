@@ -0,0 +1,178 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.github;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.mostlyharmless.jghservice.resources.ServiceConfig.Repository;
+
+/**
+ * Fetches the title, state, labels, assignees and milestone of one or more
+ * issues in a repository with a single GraphQL request.
+ * 
+ * Issues that don't exist (or are pull requests) are left out of the 
+ * result rather than failing the whole query.
+ * 
+ * Labels and assignees are capped (see {@link #MAX_LABELS}), so this is 
+ * for deciding what to do, not for reads a write is based on; those page
+ * through {@link GetLabelsOnIssue} instead.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class GetIssueStates extends GraphQLQuery<Map<Integer, IssueState>>
+{
+    /**
+     * Github charges for a query by the number of nodes it could return;
+     * labels and assignees beyond these are not returned.
+     */
+    public static final int MAX_LABELS = 100;
+    public static final int MAX_ASSIGNEES = 10;
+    public static final int MAX_ISSUES = 50;
+    
+    private static final String FRAGMENT = 
+        "fragment state on Issue { number title state " +
+        "labels(first: " + MAX_LABELS + ") { nodes { name } } " +
+        "assignees(first: " + MAX_ASSIGNEES + ") { nodes { login } } " +
+        "milestone { title number } }";
+    
+    private final Repository repo;
+    private final List<Integer> issueNumbers;
+    
+    private GetIssueStates(Builder builder)
+    {
+        this.repo = builder.repo;
+        this.issueNumbers = new ArrayList<>(builder.issueNumbers);
+    }
+
+    @Override
+    protected String getQuery()
+    {
+        StringBuilder sb = new StringBuilder("query($owner: String!, $name: String!");
+        for (int i = 0; i < issueNumbers.size(); i++)
+        {
+            sb.append(", $n").append(i).append(": Int!");
+        }
+        sb.append(") { repository(owner: $owner, name: $name) {");
+        for (int i = 0; i < issueNumbers.size(); i++)
+        {
+            sb.append(" i").append(i).append(": issue(number: $n").append(i)
+              .append(") { ...state }");
+        }
+        sb.append(" } } ").append(FRAGMENT);
+        return sb.toString();
+    }
+
+    @Override
+    protected ObjectNode getVariables()
+    {
+        ObjectNode vars = JsonNodeFactory.instance.objectNode();
+        vars.put("owner", repo.getGithubOwner());
+        vars.put("name", repo.getGithubName());
+        for (int i = 0; i < issueNumbers.size(); i++)
+        {
+            vars.put("n" + i, issueNumbers.get(i));
+        }
+        return vars;
+    }
+
+    @Override
+    protected Map<Integer, IssueState> processData(JsonNode data) throws IOException
+    {
+        Map<Integer, IssueState> states = new LinkedHashMap<>();
+        JsonNode repository = data.path("repository");
+        for (int i = 0; i < issueNumbers.size(); i++)
+        {
+            JsonNode issue = repository.path("i" + i);
+            if (issue.isObject())
+            {
+                IssueState state = toState(issue);
+                states.put(state.getNumber(), state);
+            }
+        }
+        return Collections.unmodifiableMap(states);
+    }
+    
+    private static IssueState toState(JsonNode issue)
+    {
+        List<String> labels = new ArrayList<>();
+        for (JsonNode label : issue.path("labels").path("nodes"))
+        {
+            labels.add(label.path("name").asText());
+        }
+        
+        List<String> assignees = new ArrayList<>();
+        for (JsonNode assignee : issue.path("assignees").path("nodes"))
+        {
+            assignees.add(assignee.path("login").asText());
+        }
+        
+        JsonNode milestone = issue.path("milestone");
+        String msTitle = null;
+        Integer msNumber = null;
+        if (milestone.isObject())
+        {
+            msTitle = milestone.path("title").asText();
+            msNumber = milestone.path("number").asInt();
+        }
+        
+        return new IssueState(issue.path("number").asInt(), 
+                              issue.path("title").asText(),
+                              issue.path("state").asText().toLowerCase(),
+                              labels, assignees, msTitle, msNumber);
+    }
+    
+    public static class Builder
+    {
+        private Repository repo;
+        private final Set<Integer> issueNumbers = new LinkedHashSet<>();
+        
+        public Builder withRepository(Repository repo)
+        {
+            this.repo = repo;
+            return this;
+        }
+        
+        public Builder withIssueNumber(int issueNumber)
+        {
+            issueNumbers.add(issueNumber);
+            return this;
+        }
+        
+        public GetIssueStates build()
+        {
+            if (repo == null)
+            {
+                throw new IllegalStateException("Repository cannot be null.");
+            }
+            if (issueNumbers.isEmpty() || issueNumbers.size() > MAX_ISSUES)
+            {
+                throw new IllegalStateException("Between 1 and " + MAX_ISSUES + 
+                                                " issue numbers are required.");
+            }
+            return new GetIssueStates(this);
+        }
+    }
+}
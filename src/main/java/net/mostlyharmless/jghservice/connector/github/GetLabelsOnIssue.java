@@ -16,22 +16,29 @@
 
 package net.mostlyharmless.jghservice.connector.github;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import net.mostlyharmless.jghservice.connector.Codecs;
 import net.mostlyharmless.jghservice.resources.ServiceConfig;
 
 /**
+ * Lists the names of an issue's labels. Github pages these like any other
+ * list, so use {@link GithubConnector#iterate} to get them all.
  *
  * @author Brian Roach <roach at mostlyharmless dot net>
  */
-public class GetLabelsOnIssue implements GithubCommand<List<String>>
+public class GetLabelsOnIssue implements PagedCommand<String>
 {
     protected final ServiceConfig.Repository repo;
     protected final String issueNumber;
@@ -45,14 +52,18 @@ public class GetLabelsOnIssue implements GithubCommand<List<String>>
     @Override
     public URL getUrl(String apiUrlBase) throws MalformedURLException
     {
-        String urlString = apiUrlBase +
-                           repo.getGithubOwner()+
-                           "/" +
-                           repo.getGithubName()+
-                           "/issues/" +
-                           issueNumber +
-                           "/labels";
-        return new URL(urlString);
+        return new URL(labelsUrl(apiUrlBase) + "?per_page=" + PER_PAGE);
+    }
+    
+    protected String labelsUrl(String apiUrlBase)
+    {
+        return apiUrlBase +
+               repo.getGithubOwner()+
+               "/" +
+               repo.getGithubName()+
+               "/issues/" +
+               issueNumber +
+               "/labels";
     }
 
     @Override
@@ -76,7 +87,7 @@ public class GetLabelsOnIssue implements GithubCommand<List<String>>
     @Override
     public List<String> processResponse(String jsonResponse) throws IOException
     {
-        JsonNode root = new ObjectMapper().readTree(jsonResponse);
+        JsonNode root = Codecs.treeReader().readTree(jsonResponse);
         ArrayNode arrayNode = (ArrayNode)root;
         List<String> labels = new LinkedList<>();
         
@@ -85,7 +96,40 @@ public class GetLabelsOnIssue implements GithubCommand<List<String>>
             labels.add(node.get("name").textValue());
         }
         
-        return labels;
+        return Collections.unmodifiableList(labels);
+    }
+    
+    @Override
+    public List<String> processResponse(InputStream response) throws IOException
+    {
+        // Label objects carry a url and color we don't need; pick out the
+        // names as we go.
+        List<String> labels = new LinkedList<>();
+        try (JsonParser jp = Codecs.factory().createParser(response))
+        {
+            if (jp.nextToken() != JsonToken.START_ARRAY)
+            {
+                throw new JsonParseException("Expected array of labels", jp.getCurrentLocation());
+            }
+            
+            while (jp.nextToken() == JsonToken.START_OBJECT)
+            {
+                while (jp.nextToken() == JsonToken.FIELD_NAME)
+                {
+                    String field = jp.getCurrentName();
+                    jp.nextToken();
+                    if (field.equals("name"))
+                    {
+                        labels.add(jp.getText());
+                    }
+                    else
+                    {
+                        jp.skipChildren();
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableList(labels);
     }
     
     protected static abstract class Init<T extends Init<T>>
@@ -18,22 +18,26 @@ package net.mostlyharmless.jghservice.connector.github;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.List;
-import net.mostlyharmless.jghservice.resources.ObjectMapperProvider;
+import net.mostlyharmless.jghservice.connector.Codecs;
 import net.mostlyharmless.jghservice.resources.ServiceConfig.Repository;
-import net.mostlyharmless.jghservice.resources.github.GithubEvent;
 import net.mostlyharmless.jghservice.resources.github.GithubEvent.Milestone;
 
 /**
  *
  * @author Brian Roach <roach at mostlyharmless dot net>
  */
-public class GetMilestones implements GithubCommand<List<Milestone>>
+public class GetMilestones implements PagedCommand<Milestone>
 {
+    private static final ObjectReader reader = 
+        Codecs.reader(new TypeReference<List<Milestone>>(){});
+    
     private final Repository repo;
     
     private GetMilestones(Builder builder)
@@ -48,7 +52,7 @@ public class GetMilestones implements GithubCommand<List<Milestone>>
                         repo.getGithubOwner() +
                         "/" +
                         repo.getGithubName() +
-                        "/milestones");
+                        "/milestones?state=all&per_page=" + PER_PAGE);
     }
 
     @Override
@@ -72,9 +76,13 @@ public class GetMilestones implements GithubCommand<List<Milestone>>
     @Override
     public List<Milestone> processResponse(String jsonResponse) throws IOException
     {
-        TypeReference<List<Milestone>> tr = new TypeReference<List<Milestone>>(){};
-        ObjectMapper m = new ObjectMapperProvider().getContext(GithubEvent.Milestone.class);
-        return m.readValue(jsonResponse, tr);
+        return reader.readValue(jsonResponse);
+    }
+    
+    @Override
+    public List<Milestone> processResponse(InputStream response) throws IOException
+    {
+        return Collections.unmodifiableList(reader.<List<Milestone>>readValue(response));
     }
     
     public static class Builder
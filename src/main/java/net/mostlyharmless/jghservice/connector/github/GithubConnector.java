@@ -16,18 +16,32 @@
 
 package net.mostlyharmless.jghservice.connector.github;
 
-import java.io.BufferedReader;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.xml.bind.DatatypeConverter;
+import net.mostlyharmless.jghservice.connector.Attempt;
+import net.mostlyharmless.jghservice.connector.Bulkhead;
+import net.mostlyharmless.jghservice.connector.CircuitBreaker;
+import net.mostlyharmless.jghservice.connector.Codecs;
+import net.mostlyharmless.jghservice.connector.Deadline;
+import net.mostlyharmless.jghservice.connector.DeadlineExceededException;
+import net.mostlyharmless.jghservice.connector.HttpTransport;
+import net.mostlyharmless.jghservice.connector.Idempotency;
+import net.mostlyharmless.jghservice.connector.RateLimitExceededException;
+import net.mostlyharmless.jghservice.connector.RetryPolicy;
+import net.mostlyharmless.jghservice.connector.SingleFlight;
+import net.mostlyharmless.jghservice.connector.Streams;
 import net.mostlyharmless.jghservice.connector.UnexpectedResponseException;
-import net.mostlyharmless.jghservice.resources.ServiceConfig;
 
 /**
  *
@@ -35,101 +49,407 @@ import net.mostlyharmless.jghservice.resources.ServiceConfig;
  */
 public class GithubConnector
 {
-    private final String encodedUserPass;
-    private final String userAgentName;
+    private final HttpTransport transport;
+    private final ExecutorService executor;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker breaker;
+    private final Bulkhead bulkhead;
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final ResponseCache cache;
+    private final RateLimitGovernor governor;
     private final String apiUrlBase;
     private static final Logger LOGGER = Logger.getLogger(GithubConnector.class.getName());
 
-    public GithubConnector(ServiceConfig config)
+    // Number of times a request refused for rate limiting is sent again
+    private static final int MAX_RATE_LIMITED_ATTEMPTS = 5;
+
+    public GithubConnector(HttpTransport transport, ExecutorService executor, 
+                           RetryPolicy retryPolicy, CircuitBreaker breaker,
+                           Bulkhead bulkhead, ResponseCache cache, 
+                           RateLimitGovernor governor)
     {
-        encodedUserPass = DatatypeConverter.printBase64Binary((config.getGithub().getUsername() + ":" + config.getGithub().getPassword()).getBytes());
-        userAgentName = config.getGithub().getUsername();
-        
-        String base = config.getGithub().getUrl();
-        if (!base.endsWith("/"))
-        {
-            base = base + "/";
-        }
-        
-        apiUrlBase = base;
+        this.transport = transport;
+        this.executor = executor;
+        this.retryPolicy = retryPolicy;
+        this.breaker = breaker;
+        this.bulkhead = bulkhead;
+        this.cache = cache;
+        this.governor = governor;
+        this.apiUrlBase = transport.getApiUrlBase();
+    }
+    
+    public HttpTransport getTransport()
+    {
+        return transport;
+    }
+    
+    public RetryPolicy getRetryPolicy()
+    {
+        return retryPolicy;
+    }
+    
+    public CircuitBreaker getCircuitBreaker()
+    {
+        return breaker;
+    }
+    
+    public Bulkhead getBulkhead()
+    {
+        return bulkhead;
+    }
+    
+    public SingleFlight getSingleFlight()
+    {
+        return singleFlight;
+    }
+    
+    public void shutdown()
+    {
+        executor.shutdown();
+        transport.shutdown();
     }
     
     public <T> T execute(GithubCommand<T> command) throws ExecutionException
     {
-        
+        return execute(command, Deadline.NONE);
+    }
+    
+    /**
+     * Executes the command, giving up if it can't be done before the 
+     * deadline. A command that gives up is recorded on the deadline as 
+     * incomplete.
+     */
+    public <T> T execute(final GithubCommand<T> command, final Deadline deadline) 
+        throws ExecutionException
+    {
+        return execute(command, deadline, true);
+    }
+    
+    /**
+     * Like {@link #execute(GithubCommand, Deadline)}, but a read is always sent 
+     * rather than joining an identical one already in flight. That one may
+     * have been sent before a write the caller has just waited for, so use
+     * this for a read that a write is going to be based on.
+     */
+    public <T> T executeFresh(final GithubCommand<T> command, final Deadline deadline) 
+        throws ExecutionException
+    {
+        return execute(command, deadline, false);
+    }
+    
+    <T> T execute(final GithubCommand<T> command, final Deadline deadline, 
+                  final boolean shared) 
+        throws ExecutionException
+    {
         try
         {
-            HttpURLConnection conn = (HttpURLConnection) command.getUrl(apiUrlBase).openConnection();
-            conn.setRequestMethod(command.getRequestMethod());
-            conn.setRequestProperty("Authorization", "Basic " + encodedUserPass);
-            conn.setRequestProperty("User-Agent", userAgentName);
-            conn.setDoOutput(true);
+            final URL url = command.getUrl(apiUrlBase);
+            
+            HttpTransport.Request request = 
+                new HttpTransport.Request(command.getRequestMethod(), url);
             
-            if (!command.getRequestMethod().equals(GithubCommand.GET))
+            final String json;
+            if (command.getRequestMethod().equals(GithubCommand.GET))
+            {
+                json = null;
+            }
+            else if (command.getIdempotency() == Idempotency.SAFE)
+            {
+                // Part of the single flight key, so needed as a String anyway
+                json = command.getJson();
+                request.withJson(json);
+            }
+            else
             {
-                conn.setRequestProperty("Content-Type", "application/json; charset=utf8");
-                try (OutputStreamWriter wr = new OutputStreamWriter(conn.getOutputStream()))
+                json = null;
+                request.withBody(Codecs.body(command::writeBody));
+            }
+            
+            final ResponseCache.Entry cached;
+            if (cache.isEnabled() && command.getRequestMethod().equals(GithubCommand.GET))
+            {
+                cached = cache.get(cacheKey(command, url));
+                if (cached != null)
                 {
-                    wr.write(command.getJson());
+                    request.withHeader("If-None-Match", cached.getEtag());
+                    cache.recordRevalidation();
                 }
             }
+            else
+            {
+                cached = null;
+            }
             
-            int responseCode = conn.getResponseCode();
+            // Bulkhead outside the retries: a rejection isn't worth retrying, 
+            // and a call backing off still holds its slot.
+            Attempt<T> attempt = () ->
+                bulkhead.execute(deadline, () ->
+                    retryPolicy.execute(command.getIdempotency(), deadline, () ->
+                        executeGoverned(command, request, deadline, cached, json)));
+            
+            if (shared && command.getIdempotency() == Idempotency.SAFE)
+            {
+                return singleFlight.execute(flightKey(command, url, json), deadline, attempt);
+            }
+            return attempt.run();
+        }
+        catch (DeadlineExceededException ex)
+        {
+            deadline.recordIncomplete(command.getClass().getSimpleName());
+            throw new ExecutionException(ex);
+        }
+        catch (IOException | UnexpectedResponseException ex)
+        {
+            throw new ExecutionException(ex);
+        }
+    }
+    
+    private <T> T executeGoverned(GithubCommand<T> command, 
+                                  HttpTransport.Request request,
+                                  Deadline deadline,
+                                  ResponseCache.Entry cached, 
+                                  String json) 
+        throws IOException, UnexpectedResponseException
+    {
+        for (int attempt = 1; ; attempt++)
+        {
+            // GraphQL has a budget of its own
+            governor.acquire(deadline, command instanceof GraphQLQuery 
+                ? RateLimitGovernor.GRAPHQL : RateLimitGovernor.CORE);
+            try
+            {
+                return breaker.execute(() -> execute(command, request, deadline, cached, json));
+            }
+            catch (RateLimitedException ex)
+            {
+                if (attempt >= MAX_RATE_LIMITED_ATTEMPTS)
+                {
+                    // Already sent as often as it's going to be
+                    throw new RateLimitExceededException("Github rate limit still hit after " 
+                        + attempt + " attempts", ex);
+                }
+                LOGGER.log(Level.WARNING, "Github rate limit hit; parking " + request.getUrl());
+            }
+        }
+    }
+    
+    private <T> T execute(final GithubCommand<T> command, 
+                          final HttpTransport.Request request,
+                          final Deadline deadline,
+                          final ResponseCache.Entry cached, 
+                          final String json) 
+        throws IOException, UnexpectedResponseException
+    {
+        final URL url = request.getUrl();
+        return transport.execute(request, deadline, response ->
+        {
+            int responseCode = response.getResponseCode();
+            governor.update(response);
             
+            if (responseCode == 304 && cached != null)
+            {
+                cache.recordHit();
+                @SuppressWarnings("unchecked")
+                T value = (T) cached.getValue();
+                return value;
+            }
+
             if (responseCode != command.getExpectedResponseCode())
             {
                 LOGGER.log(Level.WARNING, "Incorrect response; expected " + command.getExpectedResponseCode() + " received " + responseCode);
-                LOGGER.log(Level.INFO, command.getUrl(apiUrlBase).toString());
-                if (!command.getRequestMethod().equals(GithubCommand.GET))
+                LOGGER.log(Level.INFO, url.toString());
+                if (request.getBody() != null)
                 {
-                    LOGGER.log(Level.INFO, command.getJson());
+                    LOGGER.log(Level.INFO, json != null ? json : bodyOf(command));
                 }
-                
+
                 if (responseCode >= 400)
                 {
-                    InputStream is = conn.getErrorStream();
-                    if (is == null)
+                    String body = response.getBodyAsString();
+                    if (governor.isRateLimited(response, body))
                     {
-                        is = conn.getInputStream();
+                        throw new RateLimitedException(responseCode, 
+                            response.getResponseMessage());
                     }
-                    
-                    if (is != null)
-                    {
-                        StringBuilder sb = new StringBuilder();
-                        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-                        String resp = null;
-                        while ((resp = br.readLine()) != null)
-                        {
-                            sb.append(resp);
-                        }
-                        
-                        LOGGER.log(Level.INFO, sb.toString());
-                    }
-                    throw new ExecutionException(new UnexpectedResponseException(responseCode, 
-                    conn.getResponseMessage()));
+                    LOGGER.log(Level.INFO, body);
+                    throw new UnexpectedResponseException(responseCode, 
+                        response.getResponseMessage());
                 }
-                
-                
             }
             
-            StringBuilder sb = new StringBuilder();
-            String line;
-            BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-
-            while ((line = br.readLine()) != null)
+            String etag = response.getHeader("ETag");
+            if (cache.isEnabled() && etag != null 
+                && command.getRequestMethod().equals(GithubCommand.GET))
             {
-                sb.append(line);
+                // Need the size of the body to weigh the entry, so it's
+                // read up front rather than decoded off the wire.
+                cache.recordMiss();
+                byte[] body = Streams.readBytes(response.getBody());
+                T value = command.processResponse(
+                    response.withBody(new ByteArrayInputStream(body)));
+                cache.put(cacheKey(command, url), etag, value, body.length);
+                return value;
             }
 
-            return command.processResponse(sb.toString());
-            
-            
+            try
+            {
+                return command.processResponse(response);
+            }
+            catch (GraphQLException ex)
+            {
+                if (ex.isRateLimited())
+                {
+                    governor.limitExceeded(RateLimitGovernor.GRAPHQL, response);
+                    throw new RateLimitedException(responseCode, ex.getMessage());
+                }
+                // The query itself is at fault; like a 4xx, it's not the 
+                // upstream failing and sending it again won't help
+                LOGGER.log(Level.WARNING, ex.getMessage());
+                throw new UnexpectedResponseException(responseCode, ex.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * Iterates over everything the command lists, a page at a time.
+     * 
+     * @param prefetch whether to fetch the next page in the background 
+     * while the current one is being consumed
+     */
+    public <E> PagedIterator<E> iterate(PagedCommand<E> command, Deadline deadline, 
+                                        boolean prefetch)
+    {
+        return new PagedIterator<>(this, command, deadline, prefetch, true);
+    }
+    
+    /**
+     * Like {@link #iterate}, but no page is shared with a read already in 
+     * flight (see {@link #executeFresh}), and there's no prefetch.
+     */
+    public <E> PagedIterator<E> iterateFresh(PagedCommand<E> command, Deadline deadline)
+    {
+        return new PagedIterator<>(this, command, deadline, false, false);
+    }
+    
+    /**
+     * Goes through every page of {@link #iterateFresh} on this connector's
+     * executor and completes with all of the items.
+     */
+    public <E> CompletableFuture<List<E>> listFreshAsync(final PagedCommand<E> command, 
+                                                         final Deadline deadline)
+    {
+        try
+        {
+            return CompletableFuture.supplyAsync(() ->
+            {
+                List<E> items = new ArrayList<>();
+                try (PagedIterator<E> it = iterateFresh(command, deadline))
+                {
+                    while (it.hasNext())
+                    {
+                        items.add(it.next());
+                    }
+                }
+                catch (ExecutionException ex)
+                {
+                    throw new CompletionException(ex.getCause());
+                }
+                return items;
+            }, executor);
         }
-        catch (IOException ex)
+        catch (RejectedExecutionException ex)
         {
-            throw new ExecutionException(ex);
+            CompletableFuture<List<E>> future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+            return future;
+        }
+    }
+    
+    /**
+     * Values are cached as decoded by the command, and different commands 
+     * can decode the same URL differently.
+     */
+    private static String cacheKey(GithubCommand<?> command, URL url)
+    {
+        return command.getClass().getName() + " " + url;
+    }
+    
+    public ResponseCache getResponseCache()
+    {
+        return cache;
+    }
+    
+    public RateLimitGovernor getRateLimitGovernor()
+    {
+        return governor;
+    }
+    
+    /**
+     * The request body for logging; streamed bodies are generated again.
+     */
+    private static String bodyOf(GithubCommand<?> command)
+    {
+        try
+        {
+            return command.getJson();
+        }
+        catch (JsonProcessingException ex)
+        {
+            return "(body unavailable: " + ex.getMessage() + ")";
         }
-        
     }
     
+    /**
+     * Identical reads in flight at the same time are sent once. The command
+     * is part of the key as different commands can decode the same URL 
+     * differently.
+     */
+    private static String flightKey(GithubCommand<?> command, URL url, String json)
+    {
+        String key = command.getClass().getName() + " " + command.getRequestMethod() + " " + url;
+        return json == null ? key : key + " " + json;
+    }
+    
+    public <T> CompletableFuture<T> executeAsync(GithubCommand<T> command)
+    {
+        return executeAsync(command, Deadline.NONE);
+    }
+    
+    /**
+     * Executes the command on this connector's executor. The returned future
+     * completes exceptionally with the same cause {@link #execute} would
+     * have wrapped in an ExecutionException, or with a
+     * RejectedExecutionException if the executor is saturated.
+     */
+    public <T> CompletableFuture<T> executeAsync(final GithubCommand<T> command, 
+                                                 final Deadline deadline)
+    {
+        return executeAsync(command, deadline, true);
+    }
+    
+    <T> CompletableFuture<T> executeAsync(final GithubCommand<T> command, 
+                                          final Deadline deadline,
+                                          final boolean shared)
+    {
+        try
+        {
+            return CompletableFuture.supplyAsync(() ->
+            {
+                try
+                {
+                    return execute(command, deadline, shared);
+                }
+                catch (ExecutionException ex)
+                {
+                    throw new CompletionException(ex.getCause());
+                }
+            }, executor);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+            return future;
+        }
+    }
 }
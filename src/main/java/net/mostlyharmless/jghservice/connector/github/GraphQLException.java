@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.github;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A GraphQL query failed as a whole: Github answered with a 200 but no 
+ * data, only errors. The connector turns this into a response Github 
+ * refused (or, for RATE_LIMITED, a rate limit) rather than an I/O 
+ * failure, as sending the same query again won't help.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class GraphQLException extends IOException
+{
+    public static final String RATE_LIMITED = "RATE_LIMITED";
+    
+    private final List<String> types;
+    
+    public GraphQLException(String message, List<String> types)
+    {
+        super(message);
+        this.types = Collections.unmodifiableList(types);
+    }
+    
+    /**
+     * The "type" of each error, where Github gave one (e.g. NOT_FOUND).
+     */
+    public List<String> getTypes()
+    {
+        return types;
+    }
+    
+    public boolean isRateLimited()
+    {
+        return types.contains(RATE_LIMITED);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.github;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import net.mostlyharmless.jghservice.connector.Codecs;
+import net.mostlyharmless.jghservice.connector.Idempotency;
+
+/**
+ * A read against Github's GraphQL API, which can return what would take 
+ * several REST calls in one request. 
+ * 
+ * The endpoint is worked out from the configured REST URL: 
+ * https://api.github.com/repos/ becomes https://api.github.com/graphql 
+ * and an Enterprise https://host/api/v3/repos/ becomes 
+ * https://host/api/graphql.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public abstract class GraphQLQuery<T> implements GithubCommand<T>
+{
+    /**
+     * The query document; values come from {@link #getVariables()} rather 
+     * than being pasted into it.
+     */
+    protected abstract String getQuery();
+    
+    protected abstract ObjectNode getVariables();
+    
+    /**
+     * Decodes the "data" member of the response. Parts of it may be null 
+     * where Github reported an error for just that part (e.g. an issue 
+     * that doesn't exist).
+     */
+    protected abstract T processData(JsonNode data) throws IOException;
+    
+    @Override
+    public URL getUrl(String apiUrlBase) throws MalformedURLException
+    {
+        String base = apiUrlBase;
+        if (base.endsWith("/repos/"))
+        {
+            base = base.substring(0, base.length() - "repos/".length());
+        }
+        if (base.endsWith("/v3/"))
+        {
+            base = base.substring(0, base.length() - "v3/".length());
+        }
+        return new URL(base + "graphql");
+    }
+
+    @Override
+    public String getJson() throws JsonProcessingException
+    {
+        ObjectNode root = JsonNodeFactory.instance.objectNode();
+        root.put("query", getQuery());
+        root.put("variables", getVariables());
+        return Codecs.treeWriter().writeValueAsString(root);
+    }
+
+    @Override
+    public String getRequestMethod()
+    {
+        return POST;
+    }
+    
+    @Override
+    public Idempotency getIdempotency()
+    {
+        // Queries only; mutations would need their own base
+        return Idempotency.SAFE;
+    }
+
+    @Override
+    public int getExpectedResponseCode()
+    {
+        return 200;
+    }
+
+    @Override
+    public T processResponse(String jsonResponse) throws IOException
+    {
+        return processResponse(new ByteArrayInputStream(jsonResponse.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    @Override
+    public T processResponse(InputStream response) throws IOException
+    {
+        // Errors come back with a 200; only when there's no data at all 
+        // has the query as a whole failed.
+        JsonNode root = Codecs.treeReader().readTree(response);
+        JsonNode data = root.get("data");
+        if (data == null || data.isNull())
+        {
+            StringBuilder sb = new StringBuilder("GraphQL query failed");
+            List<String> types = new ArrayList<>();
+            JsonNode errors = root.get("errors");
+            if (errors != null)
+            {
+                for (JsonNode error : errors)
+                {
+                    sb.append("; ").append(error.path("message").asText());
+                    if (error.hasNonNull("type"))
+                    {
+                        types.add(error.get("type").asText());
+                    }
+                }
+            }
+            throw new GraphQLException(sb.toString(), types);
+        }
+        return processData(data);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.github;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of a Github issue the service acts on, as returned by 
+ * {@link GetIssueStates}.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class IssueState
+{
+    private final int number;
+    private final String title;
+    private final String state;
+    private final List<String> labels;
+    private final List<String> assignees;
+    private final String milestoneTitle;
+    private final Integer milestoneNumber;
+    
+    IssueState(int number, String title, String state, List<String> labels, 
+               List<String> assignees, String milestoneTitle, Integer milestoneNumber)
+    {
+        this.number = number;
+        this.title = title;
+        this.state = state;
+        this.labels = Collections.unmodifiableList(labels);
+        this.assignees = Collections.unmodifiableList(assignees);
+        this.milestoneTitle = milestoneTitle;
+        this.milestoneNumber = milestoneNumber;
+    }
+
+    public int getNumber()
+    {
+        return number;
+    }
+
+    public String getTitle()
+    {
+        return title;
+    }
+
+    /**
+     * "open" or "closed", as the REST API has it.
+     */
+    public String getState()
+    {
+        return state;
+    }
+
+    public List<String> getLabels()
+    {
+        return labels;
+    }
+    
+    /**
+     * Logins of everyone assigned.
+     */
+    public List<String> getAssignees()
+    {
+        return assignees;
+    }
+    
+    public boolean hasAssignee()
+    {
+        return !assignees.isEmpty();
+    }
+    
+    /**
+     * The first assignee, which is what the REST API reports as "the" 
+     * assignee.
+     */
+    public String getAssignee()
+    {
+        return assignees.isEmpty() ? null : assignees.get(0);
+    }
+    
+    public boolean hasMilestone()
+    {
+        return milestoneNumber != null;
+    }
+
+    public String getMilestoneTitle()
+    {
+        return milestoneTitle;
+    }
+
+    public Integer getMilestoneNumber()
+    {
+        return milestoneNumber;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.github;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import net.mostlyharmless.jghservice.resources.ServiceConfig;
+
+/**
+ * A set of changes to one Github issue, to be applied by 
+ * {@link IssueWriteCoalescer} as a single {@link ModifyIssue}.
+ * 
+ * Labels can either be replaced outright or changed by naming the labels 
+ * to add and remove. The latter is applied to the issue's labels as they 
+ * are when the change is sent, so changes made elsewhere in the meantime 
+ * aren't lost. Everything else is simply set; fields left null are left 
+ * as they are.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class IssueUpdate
+{
+    private final ServiceConfig.Repository repo;
+    private final int issueNumber;
+    private final String title;
+    private final String state;
+    private final String assignee;
+    private final Integer milestone;
+    private final List<String> labels;
+    private final Set<String> addLabels;
+    private final Set<String> removeLabels;
+    
+    private IssueUpdate(Builder builder)
+    {
+        this.repo = builder.repo;
+        this.issueNumber = builder.issueNumber;
+        this.title = builder.title;
+        this.state = builder.state;
+        this.assignee = builder.assignee;
+        this.milestone = builder.milestone;
+        if (builder.labels != null)
+        {
+            // Adds and removes on top of a replacement are folded into it
+            this.labels = Collections.unmodifiableList(
+                apply(builder.labels, builder.addLabels, builder.removeLabels));
+            this.addLabels = Collections.emptySet();
+            this.removeLabels = Collections.emptySet();
+        }
+        else
+        {
+            this.labels = null;
+            this.addLabels = Collections.unmodifiableSet(new LinkedHashSet<>(builder.addLabels));
+            this.removeLabels = Collections.unmodifiableSet(new LinkedHashSet<>(builder.removeLabels));
+        }
+    }
+    
+    public ServiceConfig.Repository getRepository()
+    {
+        return repo;
+    }
+    
+    public int getIssueNumber()
+    {
+        return issueNumber;
+    }
+    
+    /**
+     * Identifies the issue; updates with the same key can be merged.
+     */
+    public String getKey()
+    {
+        return repo.getGithubOwner() + "/" + repo.getGithubName() + "#" + issueNumber;
+    }
+    
+    /**
+     * Whether the issue's current labels have to be read before this can be
+     * sent.
+     */
+    public boolean needsCurrentLabels()
+    {
+        return labels == null && (!addLabels.isEmpty() || !removeLabels.isEmpty());
+    }
+    
+    /**
+     * Returns an update with this one's changes followed by the later one's.
+     */
+    public IssueUpdate merge(IssueUpdate later)
+    {
+        Builder b = new Builder()
+            .withRepository(repo)
+            .withIssueNumber(issueNumber)
+            .withTitle(later.title != null ? later.title : title)
+            .withState(later.state != null ? later.state : state)
+            .withAssignee(later.assignee != null ? later.assignee : assignee)
+            .withMilestone(later.milestone != null ? later.milestone : milestone);
+        
+        if (later.labels != null)
+        {
+            b.withLabels(later.labels);
+        }
+        else if (labels != null)
+        {
+            b.withLabels(apply(labels, later.addLabels, later.removeLabels));
+        }
+        else
+        {
+            b.addLabels.addAll(addLabels);
+            b.addLabels.removeAll(later.removeLabels);
+            b.addLabels.addAll(later.addLabels);
+            b.removeLabels.addAll(removeLabels);
+            b.removeLabels.removeAll(later.addLabels);
+            b.removeLabels.addAll(later.removeLabels);
+        }
+        return b.build();
+    }
+    
+    /**
+     * Builds the request. 
+     * 
+     * @param currentLabels the issue's labels as they are now; only needed
+     * if {@link #needsCurrentLabels()}
+     */
+    public ModifyIssue toModifyIssue(List<String> currentLabels)
+    {
+        ModifyIssue.Builder b = new ModifyIssue.Builder()
+            .withRepository(repo)
+            .withIssueNumber(issueNumber)
+            .withTitle(title)
+            .withState(state)
+            .withAssignee(assignee)
+            .withMilestone(milestone);
+        
+        if (labels != null)
+        {
+            b.withLabels(labels);
+        }
+        else if (needsCurrentLabels())
+        {
+            b.withLabels(apply(currentLabels, addLabels, removeLabels));
+        }
+        return b.build();
+    }
+    
+    private static List<String> apply(List<String> labels, Set<String> add, Set<String> remove)
+    {
+        Set<String> result = new LinkedHashSet<>(labels);
+        result.removeAll(remove);
+        result.addAll(add);
+        return new ArrayList<>(result);
+    }
+    
+    public static class Builder
+    {
+        private ServiceConfig.Repository repo;
+        private Integer issueNumber;
+        private String title;
+        private String state;
+        private String assignee;
+        private Integer milestone;
+        private List<String> labels;
+        private final Set<String> addLabels = new LinkedHashSet<>();
+        private final Set<String> removeLabels = new LinkedHashSet<>();
+        
+        public Builder withRepository(ServiceConfig.Repository repo)
+        {
+            this.repo = repo;
+            return this;
+        }
+        
+        public Builder withIssueNumber(int issueNumber)
+        {
+            this.issueNumber = issueNumber;
+            return this;
+        }
+        
+        public Builder withTitle(String title)
+        {
+            this.title = title;
+            return this;
+        }
+        
+        public Builder withState(String state)
+        {
+            this.state = state;
+            return this;
+        }
+        
+        /**
+         * Use {@link ModifyIssue#NO_ASSIGNEE} to unassign.
+         */
+        public Builder withAssignee(String assignee)
+        {
+            this.assignee = assignee;
+            return this;
+        }
+        
+        public Builder withMilestone(Integer milestone)
+        {
+            this.milestone = milestone;
+            return this;
+        }
+        
+        /**
+         * Replaces all of the issue's labels.
+         */
+        public Builder withLabels(List<String> labels)
+        {
+            this.labels = new ArrayList<>(labels);
+            addLabels.clear();
+            removeLabels.clear();
+            return this;
+        }
+        
+        public Builder addLabel(String label)
+        {
+            removeLabels.remove(label);
+            addLabels.add(label);
+            return this;
+        }
+        
+        public Builder removeLabel(String label)
+        {
+            addLabels.remove(label);
+            removeLabels.add(label);
+            return this;
+        }
+        
+        public Builder removeLabels(Collection<String> labels)
+        {
+            for (String label : labels)
+            {
+                removeLabel(label);
+            }
+            return this;
+        }
+        
+        public IssueUpdate build()
+        {
+            if (repo == null || issueNumber == null)
+            {
+                throw new IllegalStateException("Must have a repo and an issue number.");
+            }
+            return new IssueUpdate(this);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.github;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import net.mostlyharmless.jghservice.connector.Deadline;
+import net.mostlyharmless.jghservice.connector.DeadlineExceededException;
+
+/**
+ * Merges writes to the same Github issue.
+ * 
+ * The first {@link IssueUpdate} for an issue opens a short window; 
+ * updates to the same issue submitted before it closes are merged into 
+ * it, and the lot is sent as one {@link ModifyIssue}. Label adds and 
+ * removes are applied to the labels the issue has when the write goes 
+ * out, read just beforehand, rather than to labels each caller read 
+ * earlier on its own. Everyone whose update went into a write is told 
+ * how it went. Writes to the same issue are sent one after the other.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class IssueWriteCoalescer
+{
+    private final GithubConnector connector;
+    private final long window;
+    private final ScheduledExecutorService timer = 
+        Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r, "github-write-coalescer");
+            t.setDaemon(true);
+            return t;
+        });
+    
+    // guarded by this
+    private final Map<String, Pending> pending = new HashMap<>();
+    private final Map<String, CompletableFuture<Void>> inFlight = new HashMap<>();
+    
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong labelReads = new AtomicLong();
+    
+    /**
+     * @param window how long (ms) to hold an issue's first update for 
+     * others to merge with; 0 sends every update as it comes
+     */
+    public IssueWriteCoalescer(GithubConnector connector, long window)
+    {
+        this.connector = connector;
+        this.window = window;
+    }
+    
+    /**
+     * Applies the update and waits for it to be written.
+     */
+    public void update(IssueUpdate update, Deadline deadline) throws ExecutionException
+    {
+        try
+        {
+            submit(update, deadline).get(deadline.remaining(), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex)
+        {
+            deadline.recordIncomplete(ModifyIssue.class.getSimpleName());
+            throw new ExecutionException(new DeadlineExceededException(ex));
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new ExecutionException(ex);
+        }
+    }
+    
+    public CompletableFuture<Void> submit(IssueUpdate update, Deadline deadline)
+    {
+        submitted.incrementAndGet();
+        String key = update.getKey();
+        if (window <= 0)
+        {
+            Pending p = new Pending(update, deadline);
+            dispatch(key, p);
+            return p.future;
+        }
+        
+        synchronized (this)
+        {
+            Pending p = pending.get(key);
+            if (p == null)
+            {
+                p = new Pending(update, deadline);
+                pending.put(key, p);
+                timer.schedule(() -> flush(key), window, TimeUnit.MILLISECONDS);
+            }
+            else
+            {
+                p.merge(update, deadline);
+            }
+            return p.future;
+        }
+    }
+    
+    public void shutdown()
+    {
+        List<String> keys;
+        synchronized (this)
+        {
+            keys = new ArrayList<>(pending.keySet());
+        }
+        for (String key : keys)
+        {
+            flush(key);
+        }
+        timer.shutdown();
+    }
+    
+    private void flush(String key)
+    {
+        Pending p;
+        synchronized (this)
+        {
+            p = pending.remove(key);
+        }
+        if (p != null)
+        {
+            dispatch(key, p);
+        }
+    }
+    
+    /**
+     * Sends the write once the previous one to the same issue (if any) is
+     * done, so its label read sees what that one wrote.
+     */
+    private void dispatch(final String key, final Pending p)
+    {
+        CompletableFuture<Void> previous;
+        synchronized (this)
+        {
+            previous = inFlight.put(key, p.future);
+        }
+        p.future.whenComplete((result, ex) ->
+        {
+            synchronized (this)
+            {
+                inFlight.remove(key, p.future);
+            }
+        });
+        
+        if (previous == null)
+        {
+            send(p);
+        }
+        else
+        {
+            previous.whenComplete((result, ex) -> send(p));
+        }
+    }
+    
+    private void send(final Pending p)
+    {
+        final IssueUpdate update = p.update;
+        CompletableFuture<List<String>> currentLabels;
+        if (update.needsCurrentLabels())
+        {
+            labelReads.incrementAndGet();
+            GetLabelsOnIssue get = 
+                new GetLabelsOnIssue.Builder()
+                    .withRepo(update.getRepository())
+                    .withIssueNumber(update.getIssueNumber())
+                    .build();
+            // Every page, since the write replaces all of the labels; and 
+            // not shared with a read already in flight, which could have 
+            // been sent before the previous write landed
+            currentLabels = connector.listFreshAsync(get, p.deadline);
+        }
+        else
+        {
+            currentLabels = CompletableFuture.completedFuture(null);
+        }
+        
+        currentLabels
+            .thenCompose(labels ->
+            {
+                writes.incrementAndGet();
+                return connector.executeAsync(update.toModifyIssue(labels), p.deadline);
+            })
+            .whenComplete((result, ex) ->
+            {
+                if (ex != null)
+                {
+                    p.future.completeExceptionally(unwrap(ex));
+                }
+                else
+                {
+                    p.future.complete(null);
+                }
+            });
+    }
+    
+    private static Throwable unwrap(Throwable ex)
+    {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+    
+    /**
+     * Number of updates submitted.
+     */
+    public long getSubmitted()
+    {
+        return submitted.get();
+    }
+    
+    /**
+     * Number of ModifyIssue requests sent for them.
+     */
+    public long getWrites()
+    {
+        return writes.get();
+    }
+    
+    /**
+     * Number of times an issue's labels had to be read first.
+     */
+    public long getLabelReads()
+    {
+        return labelReads.get();
+    }
+    
+    public synchronized int getPending()
+    {
+        return pending.size();
+    }
+    
+    private static class Pending
+    {
+        private IssueUpdate update;
+        private Deadline deadline;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        
+        Pending(IssueUpdate update, Deadline deadline)
+        {
+            this.update = update;
+            this.deadline = deadline;
+        }
+        
+        void merge(IssueUpdate later, Deadline laterDeadline)
+        {
+            update = update.merge(later);
+            // The write goes with the most patient caller's deadline
+            if (laterDeadline.remaining() > deadline.remaining())
+            {
+                deadline = laterDeadline;
+            }
+        }
+    }
+}
@@ -18,12 +18,14 @@ package net.mostlyharmless.jghservice.connector.github;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import net.mostlyharmless.jghservice.connector.Codecs;
+import net.mostlyharmless.jghservice.connector.Idempotency;
 import net.mostlyharmless.jghservice.resources.ServiceConfig;
 
 /**
@@ -60,7 +62,13 @@ public class ModifyComment implements GithubCommand<Integer>
     @Override
     public String getJson() throws JsonProcessingException
     {
-        return mapper.writeValueAsString(this);
+        return writer.writeValueAsString(this);
+    }
+    
+    @Override
+    public void writeBody(JsonGenerator generator) throws IOException
+    {
+        writer.writeValue(generator, this);
     }
 
     @Override
@@ -69,6 +77,13 @@ public class ModifyComment implements GithubCommand<Integer>
         return POST;
     }
 
+    @Override
+    public Idempotency getIdempotency()
+    {
+        // Github treats this POST as a PATCH; it sets the body
+        return Idempotency.IDEMPOTENT;
+    }
+
     @Override
     public int getExpectedResponseCode()
     {
@@ -78,8 +93,7 @@ public class ModifyComment implements GithubCommand<Integer>
     @Override
     public Integer processResponse(String jsonResponse) throws IOException
     {
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode root = mapper.readTree(jsonResponse);
+        JsonNode root = Codecs.treeReader().readTree(jsonResponse);
         return root.get("id").asInt();
     }
     
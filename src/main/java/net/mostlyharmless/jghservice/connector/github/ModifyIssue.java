@@ -18,9 +18,12 @@ package net.mostlyharmless.jghservice.connector.github;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import net.mostlyharmless.jghservice.connector.Idempotency;
 
 /**
  *
@@ -55,10 +58,23 @@ public class ModifyIssue extends CreateIssue
                         "/" + repo.getGithubName() + "/issues/" + issueNumber );
     }
     
+    @Override
+    public Idempotency getIdempotency()
+    {
+        // Github treats this POST as a PATCH; it sets fields on the issue
+        return Idempotency.IDEMPOTENT;
+    }
+    
     @Override
     public String getJson() throws JsonProcessingException 
     {
-        return mapper.writeValueAsString(this);
+        return writer.writeValueAsString(this);
+    }
+    
+    @Override
+    public void writeBody(JsonGenerator generator) throws IOException
+    {
+        writer.writeValue(generator, this);
     }
     
     protected static abstract class Init<T extends Init<T>> extends CreateIssue.Init<T>
@@ -84,6 +100,13 @@ public class ModifyIssue extends CreateIssue
             return self();
         }
         
+        @Override
+        protected boolean requiresTitle()
+        {
+            // Only what's set is changed
+            return false;
+        }
+        
         @Override
         protected void validate()
         {
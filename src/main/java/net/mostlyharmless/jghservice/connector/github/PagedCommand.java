@@ -0,0 +1,35 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.github;
+
+import java.util.List;
+
+/**
+ * A Github command that lists things. Github returns lists a page at a 
+ * time; use {@link GithubConnector#iterate} to go through all of them. 
+ * Executing the command directly returns only the first page.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public interface PagedCommand<E> extends GithubCommand<List<E>>
+{
+    /**
+     * Largest page size Github allows. Paged commands ask for this so as 
+     * few requests as possible are made.
+     */
+    final static int PER_PAGE = 100;
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.github;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.mostlyharmless.jghservice.connector.Deadline;
+import net.mostlyharmless.jghservice.connector.HttpTransport;
+import net.mostlyharmless.jghservice.connector.Idempotency;
+
+/**
+ * Walks through every item a {@link PagedCommand} lists, following the 
+ * Link: rel="next" header from page to page. 
+ * 
+ * Pages are fetched lazily as the items are consumed, so a caller looking 
+ * for one thing can stop as soon as it finds it and the rest of the pages 
+ * are never requested. With prefetch on, the next page is requested in 
+ * the background as soon as the current one arrives. {@link #start()} 
+ * gets the first one on its way before it's needed. Call {@link #close()} 
+ * when stopping early so a prefetch in flight is abandoned.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class PagedIterator<E> implements AutoCloseable
+{
+    private static final Pattern nextLink = 
+        Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"next\"");
+    
+    private final GithubConnector connector;
+    private final PagedCommand<E> command;
+    private final Deadline deadline;
+    private final boolean prefetch;
+    private final boolean shared;
+    
+    private Iterator<E> current = Collections.<E>emptyIterator();
+    private URL nextUrl;
+    private CompletableFuture<Page<E>> pending;
+    private boolean started;
+    private int pages;
+    
+    PagedIterator(GithubConnector connector, PagedCommand<E> command, 
+                  Deadline deadline, boolean prefetch, boolean shared)
+    {
+        this.connector = connector;
+        this.command = command;
+        this.deadline = deadline;
+        this.prefetch = prefetch;
+        this.shared = shared;
+    }
+    
+    /**
+     * Requests the first page in the background, so it can be on its way 
+     * while the caller waits on something else. Does nothing once pages 
+     * have been requested.
+     */
+    public void start()
+    {
+        if (!started)
+        {
+            pending = connector.executeAsync(new PageFetch<>(command, null), deadline, shared);
+            started = true;
+        }
+    }
+    
+    public boolean hasNext() throws ExecutionException
+    {
+        while (!current.hasNext())
+        {
+            Page<E> page = nextPage();
+            if (page == null)
+            {
+                return false;
+            }
+            current = page.items.iterator();
+        }
+        return true;
+    }
+    
+    public E next() throws ExecutionException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+    
+    /**
+     * Number of pages fetched so far.
+     */
+    public int getPages()
+    {
+        return pages;
+    }
+    
+    @Override
+    public void close()
+    {
+        if (pending != null)
+        {
+            pending.cancel(false);
+            pending = null;
+        }
+        nextUrl = null;
+        current = Collections.<E>emptyIterator();
+        started = true;
+    }
+    
+    private Page<E> nextPage() throws ExecutionException
+    {
+        Page<E> page;
+        if (pending != null)
+        {
+            try
+            {
+                page = pending.get();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new ExecutionException(ex);
+            }
+            finally
+            {
+                pending = null;
+            }
+        }
+        else if (!started)
+        {
+            page = connector.execute(new PageFetch<>(command, null), deadline, shared);
+        }
+        else if (nextUrl != null)
+        {
+            page = connector.execute(new PageFetch<>(command, nextUrl), deadline, shared);
+        }
+        else
+        {
+            return null;
+        }
+        
+        started = true;
+        pages++;
+        nextUrl = page.next;
+        if (prefetch && nextUrl != null)
+        {
+            pending = connector.executeAsync(new PageFetch<>(command, nextUrl), deadline, shared);
+            nextUrl = null;
+        }
+        return page;
+    }
+    
+    static URL parseNextLink(String linkHeader) throws MalformedURLException
+    {
+        if (linkHeader != null)
+        {
+            Matcher m = nextLink.matcher(linkHeader);
+            if (m.find())
+            {
+                return new URL(m.group(1));
+            }
+        }
+        return null;
+    }
+    
+    private static class Page<E>
+    {
+        private final List<E> items;
+        private final URL next;
+        
+        Page(List<E> items, URL next)
+        {
+            this.items = items;
+            this.next = next;
+        }
+    }
+    
+    /**
+     * Fetches one page: the command's own URL for the first, the URL Github 
+     * gave us for the rest.
+     */
+    private static class PageFetch<E> implements GithubCommand<Page<E>>
+    {
+        private final PagedCommand<E> command;
+        private final URL url;
+        
+        PageFetch(PagedCommand<E> command, URL url)
+        {
+            this.command = command;
+            this.url = url;
+        }
+
+        @Override
+        public URL getUrl(String apiUrlBase) throws MalformedURLException
+        {
+            return url == null ? command.getUrl(apiUrlBase) : url;
+        }
+
+        @Override
+        public String getJson() throws JsonProcessingException
+        {
+            return command.getJson();
+        }
+
+        @Override
+        public String getRequestMethod()
+        {
+            return command.getRequestMethod();
+        }
+
+        @Override
+        public int getExpectedResponseCode()
+        {
+            return command.getExpectedResponseCode();
+        }
+        
+        @Override
+        public Idempotency getIdempotency()
+        {
+            return command.getIdempotency();
+        }
+
+        @Override
+        public Page<E> processResponse(String jsonResponse) throws IOException
+        {
+            return new Page<>(command.processResponse(jsonResponse), null);
+        }
+        
+        @Override
+        public Page<E> processResponse(InputStream response) throws IOException
+        {
+            return new Page<>(command.processResponse(response), null);
+        }
+        
+        @Override
+        public Page<E> processResponse(HttpTransport.Response response) throws IOException
+        {
+            return new Page<>(command.processResponse(response.getBody()), 
+                              parseNextLink(response.getHeader("Link")));
+        }
+    }
+}
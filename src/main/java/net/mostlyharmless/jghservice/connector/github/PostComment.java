@@ -18,12 +18,13 @@ package net.mostlyharmless.jghservice.connector.github;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import net.mostlyharmless.jghservice.connector.Codecs;
 import net.mostlyharmless.jghservice.resources.ServiceConfig;
 
 /**
@@ -62,7 +63,13 @@ public class PostComment implements GithubCommand<Integer>
     @Override
     public String getJson() throws JsonProcessingException
     {
-        return mapper.writeValueAsString(this);
+        return writer.writeValueAsString(this);
+    }
+    
+    @Override
+    public void writeBody(JsonGenerator generator) throws IOException
+    {
+        writer.writeValue(generator, this);
     }
 
     @Override
@@ -80,8 +87,7 @@ public class PostComment implements GithubCommand<Integer>
     @Override
     public Integer processResponse(String jsonResponse) throws IOException
     {
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode root = mapper.readTree(jsonResponse);
+        JsonNode root = Codecs.treeReader().readTree(jsonResponse);
         return root.get("id").asInt();
     }
     
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.github;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import net.mostlyharmless.jghservice.connector.Deadline;
+import net.mostlyharmless.jghservice.connector.DeadlineExceededException;
+import net.mostlyharmless.jghservice.connector.HttpTransport;
+import net.mostlyharmless.jghservice.connector.RateLimitExceededException;
+
+/**
+ * Keeps the connector inside Github's rate limits.
+ * 
+ * The remaining budget and the time the window resets are taken from the
+ * X-RateLimit-* headers on every response. Requests go straight through 
+ * while the budget is healthy; once it drops below a threshold what's left 
+ * is spread evenly over the rest of the window, and once it's gone requests
+ * are parked until the reset rather than being sent only to get a 403.
+ * 
+ * Secondary ("abuse") limits are handled separately: Github either says how
+ * long to wait with Retry-After or we back off exponentially, starting at
+ * a minute, until a request succeeds again.
+ * 
+ * Other resources (GraphQL) have budgets of their own. Requests to them 
+ * don't count against the core budget and aren't held back by it; they're
+ * only parked once their own limit has been hit, until it resets.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class RateLimitGovernor
+{
+    /** The X-RateLimit-Resource of the REST API. */
+    public static final String CORE = "core";
+    public static final String GRAPHQL = "graphql";
+    
+    // Clocks aren't perfectly in sync with Github's
+    private static final long RESET_SKEW = 1000;
+    
+    private final int paceBelow;
+    private final long maxWait;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    
+    // All guarded by this. -1 means not known yet.
+    private int limit = -1;
+    private int remaining = -1;
+    private long resetAt;
+    private long nextSlot;
+    private long pausedUntil;
+    private long backoff;
+    // Resources other than core whose limit has been hit, and when it resets
+    private final Map<String, Long> exhaustedUntil = new HashMap<>();
+    
+    private final AtomicLong parked = new AtomicLong();
+    private final AtomicLong parkedMillis = new AtomicLong();
+    private final AtomicLong primaryLimited = new AtomicLong();
+    private final AtomicLong secondaryLimited = new AtomicLong();
+    
+    /**
+     * @param paceBelow remaining budget below which requests are paced
+     * @param maxWait longest a request will be parked before failing, in ms
+     * @param initialBackoff first backoff after a secondary limit, in ms
+     * @param maxBackoff cap on the secondary limit backoff, in ms
+     */
+    public RateLimitGovernor(int paceBelow, long maxWait, long initialBackoff, long maxBackoff)
+    {
+        this.paceBelow = paceBelow;
+        this.maxWait = maxWait;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+    
+    /**
+     * Blocks until a request to the given resource ({@link #CORE} or 
+     * {@link #GRAPHQL}) may be sent.
+     * @throws RateLimitExceededException if the wait would be longer than 
+     * the configured maximum
+     * @throws DeadlineExceededException if it would run past the deadline
+     */
+    public void acquire(Deadline deadline, String resource) throws IOException
+    {
+        long wait = reserve(System.currentTimeMillis(), deadline, resource);
+        if (wait > 0)
+        {
+            parked.incrementAndGet();
+            parkedMillis.addAndGet(wait);
+            try
+            {
+                Thread.sleep(wait);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting on Github rate limit");
+            }
+        }
+    }
+    
+    private synchronized long reserve(long now, Deadline deadline, String resource) 
+        throws IOException
+    {
+        boolean core = CORE.equals(resource);
+        if (remaining >= 0 && now >= resetAt + RESET_SKEW)
+        {
+            // Window has rolled over; the next response will tell us the
+            // new budget.
+            remaining = -1;
+        }
+        
+        long start = Math.max(now, pausedUntil);
+        if (!core)
+        {
+            Long until = exhaustedUntil.get(resource);
+            if (until != null && now >= until)
+            {
+                exhaustedUntil.remove(resource);
+            }
+            else if (until != null)
+            {
+                start = Math.max(start, until);
+            }
+        }
+        else if (remaining == 0)
+        {
+            start = Math.max(start, resetAt + RESET_SKEW);
+        }
+        else if (remaining > 0 && remaining < paceBelow)
+        {
+            long interval = Math.max(0, resetAt - now) / remaining;
+            start = Math.max(start, nextSlot);
+            nextSlot = start + interval;
+        }
+        
+        long wait = start - now;
+        if (wait > maxWait)
+        {
+            throw new RateLimitExceededException("Github rate limit exceeded; next request allowed in " 
+                                                 + wait + "ms");
+        }
+        if (wait > 0 && wait >= deadline.remaining())
+        {
+            throw new DeadlineExceededException();
+        }
+        
+        if (core && remaining > 0)
+        {
+            remaining--;
+        }
+        return wait;
+    }
+    
+    /**
+     * Records the budget reported by a response. 
+     */
+    public synchronized void update(HttpTransport.Response response)
+    {
+        // GraphQL (and search) are counted against their own limits; only
+        // the core REST limit is tracked.
+        String resource = response.getHeader("X-RateLimit-Resource");
+        if (resource != null && !resource.equals("core"))
+        {
+            return;
+        }
+        
+        int hLimit = parseInt(response.getHeader("X-RateLimit-Limit"));
+        int hRemaining = parseInt(response.getHeader("X-RateLimit-Remaining"));
+        long hReset = parseLong(response.getHeader("X-RateLimit-Reset"));
+        
+        if (hRemaining >= 0 && hReset >= 0)
+        {
+            hReset *= 1000;
+            if (hReset != resetAt || remaining < 0)
+            {
+                resetAt = hReset;
+                remaining = hRemaining;
+            }
+            else
+            {
+                // Responses can arrive out of order; the lowest count seen
+                // for this window is the most recent.
+                remaining = Math.min(remaining, hRemaining);
+            }
+            
+            if (hLimit >= 0)
+            {
+                limit = hLimit;
+            }
+        }
+        
+        if (response.getResponseCode() < 400)
+        {
+            backoff = 0;
+        }
+    }
+    
+    /**
+     * Determines whether a failed response was Github refusing the request 
+     * because of a rate limit. If so, the governor will hold back the 
+     * next request accordingly and the request can be sent again.
+     */
+    public synchronized boolean isRateLimited(HttpTransport.Response response, String body)
+    {
+        int code = response.getResponseCode();
+        if (code != 403 && code != 429)
+        {
+            return false;
+        }
+        
+        long now = System.currentTimeMillis();
+        long retryAfter = parseLong(response.getHeader("Retry-After"));
+        if (retryAfter >= 0)
+        {
+            pausedUntil = Math.max(pausedUntil, now + retryAfter * 1000);
+            secondaryLimited.incrementAndGet();
+            return true;
+        }
+        
+        if ("0".equals(response.getHeader("X-RateLimit-Remaining")))
+        {
+            exhausted(response.getHeader("X-RateLimit-Resource"), response, now);
+            return true;
+        }
+        
+        String lower = body == null ? "" : body.toLowerCase();
+        if (lower.contains("secondary rate limit") || lower.contains("abuse"))
+        {
+            backoff = backoff == 0 ? initialBackoff : Math.min(maxBackoff, backoff * 2);
+            pausedUntil = Math.max(pausedUntil, now + backoff);
+            secondaryLimited.incrementAndGet();
+            return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Records that Github refused a request to the resource because its 
+     * limit has been used up, however it said so (a GraphQL query gets a 
+     * 200 with a RATE_LIMITED error). Requests to it are held back until 
+     * the reset the response reports.
+     */
+    public synchronized void limitExceeded(String resource, HttpTransport.Response response)
+    {
+        exhausted(resource, response, System.currentTimeMillis());
+    }
+    
+    private void exhausted(String resource, HttpTransport.Response response, long now)
+    {
+        primaryLimited.incrementAndGet();
+        if (resource == null || resource.equals(CORE))
+        {
+            remaining = 0;
+            return;
+        }
+        long reset = parseLong(response.getHeader("X-RateLimit-Reset"));
+        long until = reset >= 0 ? reset * 1000 + RESET_SKEW : now + initialBackoff;
+        exhaustedUntil.put(resource, until);
+    }
+    
+    private static int parseInt(String value)
+    {
+        return (int) parseLong(value);
+    }
+    
+    private static long parseLong(String value)
+    {
+        if (value != null)
+        {
+            try
+            {
+                return Long.parseLong(value.trim());
+            }
+            catch (NumberFormatException ex)
+            {
+                // fall through
+            }
+        }
+        return -1;
+    }
+
+    public synchronized int getLimit()
+    {
+        return limit;
+    }
+
+    public synchronized int getRemaining()
+    {
+        return remaining;
+    }
+
+    /**
+     * Time the current window resets, in milliseconds since the epoch.
+     */
+    public synchronized long getResetAt()
+    {
+        return resetAt;
+    }
+
+    /**
+     * Time requests are held until because of a secondary limit, in 
+     * milliseconds since the epoch.
+     */
+    public synchronized long getPausedUntil()
+    {
+        return pausedUntil;
+    }
+
+    public long getParked()
+    {
+        return parked.get();
+    }
+
+    public long getParkedMillis()
+    {
+        return parkedMillis.get();
+    }
+
+    public long getPrimaryLimited()
+    {
+        return primaryLimited.get();
+    }
+
+    public long getSecondaryLimited()
+    {
+        return secondaryLimited.get();
+    }
+}
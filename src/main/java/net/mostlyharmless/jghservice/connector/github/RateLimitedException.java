@@ -0,0 +1,33 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.github;
+
+import net.mostlyharmless.jghservice.connector.UnexpectedResponseException;
+
+/**
+ * Github refused a request because of a rate limit. The request wasn't 
+ * acted on and can be sent again once the governor allows it.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class RateLimitedException extends UnexpectedResponseException
+{
+    public RateLimitedException(int code, String response)
+    {
+        super(code, response);
+    }
+}
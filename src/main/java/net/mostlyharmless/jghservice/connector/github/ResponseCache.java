@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.github;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conditional request cache for Github GETs.
+ * 
+ * Entries are keyed by command and URL and hold the ETag Github sent along with the 
+ * decoded response. The connector sends the ETag back as If-None-Match and 
+ * Github answers 304 (which doesn't count against the rate limit) when 
+ * nothing changed. Entries are weighed by the size of the response body 
+ * they were decoded from and the least recently used are evicted once the
+ * total goes over the configured size.
+ * 
+ * Cached values are handed to every caller that revalidates them, so 
+ * commands using the cache must return values that aren't modified after
+ * the fact (e.g. unmodifiable lists).
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class ResponseCache
+{
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = 
+        new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    public ResponseCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+    
+    public boolean isEnabled()
+    {
+        return maxBytes > 0;
+    }
+    
+    public synchronized Entry get(String key)
+    {
+        return entries.get(key);
+    }
+    
+    public synchronized void put(String key, String etag, Object value, long weight)
+    {
+        if (weight > maxBytes)
+        {
+            return;
+        }
+        
+        Entry old = entries.put(key, new Entry(etag, value, weight));
+        if (old != null)
+        {
+            currentBytes -= old.weight;
+        }
+        currentBytes += weight;
+        
+        Iterator<Entry> iter = entries.values().iterator();
+        while (currentBytes > maxBytes && iter.hasNext())
+        {
+            Entry eldest = iter.next();
+            iter.remove();
+            currentBytes -= eldest.weight;
+            evictions.incrementAndGet();
+        }
+    }
+    
+    public synchronized void remove(String key)
+    {
+        Entry old = entries.remove(key);
+        if (old != null)
+        {
+            currentBytes -= old.weight;
+        }
+    }
+    
+    void recordHit()
+    {
+        hits.incrementAndGet();
+    }
+    
+    void recordMiss()
+    {
+        misses.incrementAndGet();
+    }
+    
+    void recordRevalidation()
+    {
+        revalidations.incrementAndGet();
+    }
+    
+    /**
+     * Number of requests answered with a 304 and served from the cache.
+     * Each of these is a request that didn't count against the rate limit.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+    
+    /**
+     * Number of GETs that had to be served by a full response.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+    
+    /**
+     * Number of conditional (If-None-Match) requests sent.
+     */
+    public long getRevalidations()
+    {
+        return revalidations.get();
+    }
+    
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+    
+    public synchronized int getSize()
+    {
+        return entries.size();
+    }
+    
+    public synchronized long getBytes()
+    {
+        return currentBytes;
+    }
+    
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+    
+    public static class Entry
+    {
+        private final String etag;
+        private final Object value;
+        private final long weight;
+        
+        Entry(String etag, Object value, long weight)
+        {
+            this.etag = etag;
+            this.value = value;
+            this.weight = weight;
+        }
+
+        public String getEtag()
+        {
+            return etag;
+        }
+
+        public Object getValue()
+        {
+            return value;
+        }
+    }
+}
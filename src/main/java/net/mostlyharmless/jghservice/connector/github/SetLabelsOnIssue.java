@@ -16,7 +16,11 @@
 
 package net.mostlyharmless.jghservice.connector.github;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -34,10 +38,22 @@ public class SetLabelsOnIssue extends GetLabelsOnIssue
         this.labels = builder.labels;
     }
     
+    @Override
+    public URL getUrl(String apiUrlBase) throws MalformedURLException
+    {
+        return new URL(labelsUrl(apiUrlBase));
+    }
+    
     @Override
     public String getJson() throws JsonProcessingException
     {
-        return mapper.writeValueAsString(labels);
+        return writer.writeValueAsString(labels);
+    }
+    
+    @Override
+    public void writeBody(JsonGenerator generator) throws IOException
+    {
+        writer.writeValue(generator, labels);
     }
 
     @Override
@@ -16,14 +16,13 @@
 
 package net.mostlyharmless.jghservice.connector.jira;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import net.mostlyharmless.jghservice.connector.Codecs;
 
 /**
  *
@@ -31,17 +30,6 @@ import java.net.URL;
  */
 public class AddExternalLinkToIssue implements JiraCommand<String>
 {
-    private final static ObjectNode APPLICATION = 
-        JsonNodeFactory.instance.objectNode()
-            .put("type","github.com")
-            .put("name", "Github");
-    
-    private final static ObjectNode ICON =
-        JsonNodeFactory.instance.objectNode()
-            .put("url16x16","https://github.com/favicon.ico")
-            .put("title","Github");
-        
-        
     private final String jiraIssueKey;
     private final String url;
     private final String title;
@@ -65,23 +53,31 @@ public class AddExternalLinkToIssue implements JiraCommand<String>
     @Override
     public String getJson() throws JsonProcessingException
     {
-        String globalId = "jira=" + jiraIssueKey + "&gh=" + url;
-        
-        ObjectNode root = JsonNodeFactory.instance.objectNode();
-        root.put("globalId", globalId);
-        root.put("application", APPLICATION);
+        return Codecs.toString(this::writeBody);
+    }
+    
+    @Override
+    public void writeBody(JsonGenerator generator) throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeStringField("globalId", "jira=" + jiraIssueKey + "&gh=" + url);
+        generator.writeObjectFieldStart("application");
+        generator.writeStringField("type", "github.com");
+        generator.writeStringField("name", "Github");
+        generator.writeEndObject();
         if (relationship != null)
         {
-            root.put("relationship", relationship);
+            generator.writeStringField("relationship", relationship);
         }
-        ObjectNode object = JsonNodeFactory.instance.objectNode();
-        object.put("icon", ICON);
-        object.put("url", url);
-        object.put("title", title);
-        root.put("object", object);
-        
-        return new ObjectMapper().writeValueAsString(root);
-        
+        generator.writeObjectFieldStart("object");
+        generator.writeObjectFieldStart("icon");
+        generator.writeStringField("url16x16", "https://github.com/favicon.ico");
+        generator.writeStringField("title", "Github");
+        generator.writeEndObject();
+        generator.writeStringField("url", url);
+        generator.writeStringField("title", title);
+        generator.writeEndObject();
+        generator.writeEndObject();
     }
 
     @Override
@@ -99,7 +95,7 @@ public class AddExternalLinkToIssue implements JiraCommand<String>
     @Override
     public String processResponse(String jsonResponse) throws IOException
     {
-        JsonNode root = new ObjectMapper().readTree(jsonResponse);
+        JsonNode root = Codecs.treeReader().readTree(jsonResponse);
         return root.get("id").textValue();
     }
     
@@ -16,22 +16,22 @@
 
 package net.mostlyharmless.jghservice.connector.jira;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.NumericNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import net.mostlyharmless.jghservice.connector.Codecs;
 
 /**
  *
@@ -75,91 +75,103 @@ public class CreateIssue implements JiraCommand<String>
     @Override
     public String getJson() throws JsonProcessingException
     {
-        JsonNodeFactory factory = JsonNodeFactory.instance;
-        ObjectNode newNode = factory.objectNode();
-        ObjectNode fields = factory.objectNode();
+        return Codecs.toString(this::writeBody);
+    }
+    
+    @Override
+    public void writeBody(JsonGenerator generator) throws IOException
+    {
+        writeIssue(generator);
+    }
+    
+    /**
+     * The issue as Jira wants it; also used as one element of a bulk create.
+     */
+    void writeIssue(JsonGenerator generator) throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("fields");
         
         if (projectKey != null)
         {
-            ObjectNode project = factory.objectNode();
-            project.put("key", projectKey);
-            fields.put("project", project);
+            generator.writeObjectFieldStart("project");
+            generator.writeStringField("key", projectKey);
+            generator.writeEndObject();
         }
         
         if (issuetype != null)
         {
-            ObjectNode iType = factory.objectNode();
-            iType.put("name", issuetype);
-            fields.put("issuetype", iType);
+            generator.writeObjectFieldStart("issuetype");
+            generator.writeStringField("name", issuetype);
+            generator.writeEndObject();
         }
         
         if (summary != null)
         {
-            fields.put("summary", summary);
+            generator.writeStringField("summary", summary);
         }
         
         if (description != null)
         {
-            fields.put("description", description);
+            generator.writeStringField("description", description);
         }
         
         if (!fixVersions.isEmpty())
         {
-            ArrayNode array = factory.arrayNode();
-            for (String version : fixVersions)
-            {
-                ObjectNode node = factory.objectNode();
-                node.put("name", version);
-                array.add(node);
-            }
-            fields.put("fixVersions", array);
+            writeVersions(generator, "fixVersions", fixVersions);
         }
         
         if (!affectsVersions.isEmpty())
         {
-            ArrayNode array = factory.arrayNode();
-            for (String version : affectsVersions)
-            {
-                ObjectNode node = factory.objectNode();
-                node.put("name", version);
-                array.add(node);
-            }
-            fields.put("versions", array);
+            writeVersions(generator, "versions", affectsVersions);
         }
         
         if (!labels.isEmpty())
         {
-            ArrayNode array = factory.arrayNode();
+            generator.writeArrayFieldStart("labels");
             for (String label : labels)
             {
-                array.add(label);
+                generator.writeString(label);
             }
-            fields.put("labels", array);
+            generator.writeEndArray();
         }
         
         if (assignee != null)
         {
-            ObjectNode node = factory.objectNode();
+            generator.writeObjectFieldStart("assignee");
             if (assignee.isEmpty())
             {
-                node.put("name", factory.nullNode());
+                generator.writeNullField("name");
             }
             else
             {
-                node.put("name", assignee);
+                generator.writeStringField("name", assignee);
             }
-            fields.put("assignee", node);
+            generator.writeEndObject();
         }
         
         for (Map.Entry<String, JsonNode> entry : customFields.entrySet())
         {
-            fields.put(entry.getKey(), entry.getValue());
+            generator.writeFieldName(entry.getKey());
+            generator.writeTree(entry.getValue());
         }
         
-        newNode.put("fields", fields);
-        
-        return new ObjectMapper().writeValueAsString(newNode);
-        
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+    
+    private static void writeVersions(JsonGenerator generator, String field, 
+                                      List<String> versions) 
+        throws IOException
+    {
+        generator.writeArrayFieldStart(field);
+        for (String version : versions)
+        {
+            generator.writeStartObject();
+            generator.writeStringField("name", version);
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
     }
 
     @Override
@@ -177,7 +189,7 @@ public class CreateIssue implements JiraCommand<String>
     @Override
     public String processResponse(String jsonResponse) throws IOException
     {
-        JsonNode root = new ObjectMapper().readTree(jsonResponse);
+        JsonNode root = Codecs.treeReader().readTree(jsonResponse);
         return root.get("key").textValue();
     }
     
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.jira;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import net.mostlyharmless.jghservice.connector.Codecs;
+
+/**
+ * Creates several issues in one request. 
+ * 
+ * Jira creates what it can and reports the rest as errors, so the result 
+ * has one entry per issue, in the order they were added, with either the
+ * new key or the error for that issue.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class CreateIssuesBulk implements JiraCommand<List<CreateIssuesBulk.Created>>
+{
+    /** Most issues Jira accepts in one bulk request */
+    public static final int MAX_ISSUES = 50;
+    
+    private final List<CreateIssue> issues;
+    
+    private CreateIssuesBulk(Builder builder)
+    {
+        this.issues = new ArrayList<>(builder.issues);
+    }
+    
+    @Override
+    public URL getUrl(String apiUrlBase) throws MalformedURLException
+    {
+        return new URL(apiUrlBase + "issue/bulk");
+    }
+
+    @Override
+    public String getJson() throws JsonProcessingException
+    {
+        return Codecs.toString(this::writeBody);
+    }
+    
+    @Override
+    public void writeBody(JsonGenerator generator) throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("issueUpdates");
+        for (CreateIssue issue : issues)
+        {
+            issue.writeIssue(generator);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    @Override
+    public String getRequestMethod()
+    {
+        return POST;
+    }
+
+    @Override
+    public int getExpectedResponseCode()
+    {
+        return 201;
+    }
+
+    @Override
+    public List<Created> processResponse(String jsonResponse) throws IOException
+    {
+        JsonNode root = Codecs.treeReader().readTree(jsonResponse);
+        
+        // Failed elements are reported by index; the created issues are 
+        // listed in order, skipping those.
+        Map<Integer, Created> errors = new HashMap<>();
+        if (root.has("errors"))
+        {
+            for (JsonNode error : root.get("errors"))
+            {
+                errors.put(error.path("failedElementNumber").intValue(), 
+                           new Created(null, error.path("status").asInt(400),
+                                       error.path("elementErrors").toString()));
+            }
+        }
+        
+        List<String> keys = new LinkedList<>();
+        if (root.has("issues"))
+        {
+            for (JsonNode issue : root.get("issues"))
+            {
+                keys.add(issue.get("key").textValue());
+            }
+        }
+        
+        List<Created> results = new ArrayList<>(issues.size());
+        Iterator<String> keyIter = keys.iterator();
+        for (int i = 0; i < issues.size(); i++)
+        {
+            if (errors.containsKey(i))
+            {
+                results.add(errors.get(i));
+            }
+            else if (keyIter.hasNext())
+            {
+                results.add(new Created(keyIter.next(), 201, null));
+            }
+            else
+            {
+                results.add(new Created(null, 500, "No result returned for issue"));
+            }
+        }
+        
+        return Collections.unmodifiableList(results);
+    }
+    
+    public static class Created
+    {
+        private final String key;
+        private final int status;
+        private final String error;
+        
+        Created(String key, int status, String error)
+        {
+            this.key = key;
+            this.status = status;
+            this.error = error;
+        }
+        
+        public boolean isCreated()
+        {
+            return key != null;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public int getStatus()
+        {
+            return status;
+        }
+
+        public String getError()
+        {
+            return error;
+        }
+    }
+    
+    public static class Builder
+    {
+        private final List<CreateIssue> issues = new LinkedList<>();
+        
+        public Builder addIssue(CreateIssue issue)
+        {
+            issues.add(issue);
+            return this;
+        }
+        
+        public Builder addIssues(List<CreateIssue> issues)
+        {
+            this.issues.addAll(issues);
+            return this;
+        }
+        
+        public CreateIssuesBulk build()
+        {
+            if (issues.isEmpty() || issues.size() > MAX_ISSUES)
+            {
+                throw new IllegalStateException("Between 1 and " + MAX_ISSUES + " issues required.");
+            }
+            return new CreateIssuesBulk(this);
+        }
+    }
+}
@@ -17,11 +17,12 @@
 package net.mostlyharmless.jghservice.connector.jira;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import net.mostlyharmless.jghservice.resources.ObjectMapperProvider;
+import net.mostlyharmless.jghservice.connector.Codecs;
 import net.mostlyharmless.jghservice.resources.jira.JiraEvent;
 
 /**
@@ -30,6 +31,8 @@ import net.mostlyharmless.jghservice.resources.jira.JiraEvent;
  */
 public class GetIssue implements JiraCommand<JiraEvent.Issue>
 {
+    private static final ObjectReader reader = Codecs.reader(JiraEvent.Issue.class);
+    
     private final String issueKey;
     
     private GetIssue(Builder builder)
@@ -64,8 +67,13 @@ public class GetIssue implements JiraCommand<JiraEvent.Issue>
     @Override
     public JiraEvent.Issue processResponse(String jsonResponse) throws IOException
     {
-        ObjectMapper m = new ObjectMapperProvider().getContext(JiraEvent.Issue.class);
-        return m.readValue(jsonResponse, JiraEvent.Issue.class);
+        return reader.readValue(jsonResponse);
+    }
+    
+    @Override
+    public JiraEvent.Issue processResponse(InputStream response) throws IOException
+    {
+        return reader.readValue(response);
     }
     
     public static class Builder
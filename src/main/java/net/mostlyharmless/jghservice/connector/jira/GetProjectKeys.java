@@ -18,13 +18,13 @@ package net.mostlyharmless.jghservice.connector.jira;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.LinkedList;
 import java.util.List;
+import net.mostlyharmless.jghservice.connector.Codecs;
 
 /**
  *
@@ -66,7 +66,7 @@ public class GetProjectKeys implements JiraCommand<List<String>>
     public List<String> processResponse(String jsonResponse) throws IOException
     {
         List<String> list = new LinkedList<>();
-        ArrayNode jArray = (ArrayNode) new ObjectMapper().readTree(jsonResponse);
+        ArrayNode jArray = (ArrayNode) Codecs.treeReader().readTree(jsonResponse);
         for (JsonNode node : jArray)
         {
             list.add(node.get("key").textValue());
@@ -18,13 +18,13 @@ package net.mostlyharmless.jghservice.connector.jira;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.LinkedList;
 import java.util.List;
+import net.mostlyharmless.jghservice.connector.Codecs;
 
 /**
  *
@@ -67,7 +67,7 @@ public class GetProjectVersions implements JiraCommand<List<String>>
     public List<String> processResponse(String jsonResponse) throws IOException
     {
         List<String> versions = new LinkedList<>();
-        ArrayNode array = (ArrayNode) new ObjectMapper().readTree(jsonResponse);
+        ArrayNode array = (ArrayNode) Codecs.treeReader().readTree(jsonResponse);
         for (JsonNode version : array)
         {
             versions.add(version.get("name").textValue());
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.jira;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import net.mostlyharmless.jghservice.connector.Deadline;
+import net.mostlyharmless.jghservice.connector.DeadlineExceededException;
+import net.mostlyharmless.jghservice.connector.UnexpectedResponseException;
+
+/**
+ * Groups issue creates into bulk requests.
+ * 
+ * Creates submitted within a short window of each other are sent to Jira 
+ * together as one {@link CreateIssuesBulk}, up to the batch size. Each 
+ * caller gets back the key of its own issue, or the error Jira reported 
+ * for it. A create that finds nothing else waiting to go with it is sent 
+ * on its own as a plain {@link CreateIssue}.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class IssueCreateBatcher
+{
+    private final JiraConnector connector;
+    private final int maxBatchSize;
+    private final long linger;
+    private final ScheduledExecutorService timer = 
+        Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r, "jira-create-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+    
+    // guarded by this
+    private final List<Pending> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduled;
+    
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong singleRequests = new AtomicLong();
+    private final AtomicLong batchedIssues = new AtomicLong();
+    
+    /**
+     * @param maxBatchSize most issues to send in one request; capped at 
+     * what Jira allows. 1 turns batching off.
+     * @param linger how long (ms) to wait for other creates to batch with
+     */
+    public IssueCreateBatcher(JiraConnector connector, int maxBatchSize, long linger)
+    {
+        this.connector = connector;
+        this.maxBatchSize = Math.max(1, Math.min(maxBatchSize, CreateIssuesBulk.MAX_ISSUES));
+        this.linger = linger;
+    }
+    
+    /**
+     * Creates the issue and waits for its key. 
+     */
+    public String create(CreateIssue issue, Deadline deadline) throws ExecutionException
+    {
+        try
+        {
+            return submit(issue, deadline).get(deadline.remaining(), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex)
+        {
+            deadline.recordIncomplete(issue.getClass().getSimpleName());
+            throw new ExecutionException(new DeadlineExceededException(ex));
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new ExecutionException(ex);
+        }
+    }
+    
+    public CompletableFuture<String> submit(CreateIssue issue, Deadline deadline)
+    {
+        // Subclasses (e.g. UpdateIssue) aren't creates
+        if (maxBatchSize == 1 || issue.getClass() != CreateIssue.class)
+        {
+            singleRequests.incrementAndGet();
+            return connector.executeAsync(issue, deadline);
+        }
+        
+        Pending p = new Pending(issue, deadline);
+        List<Pending> batch = null;
+        synchronized (this)
+        {
+            pending.add(p);
+            if (pending.size() >= maxBatchSize)
+            {
+                batch = drain();
+            }
+            else if (scheduled == null)
+            {
+                scheduled = timer.schedule(this::flush, linger, TimeUnit.MILLISECONDS);
+            }
+        }
+        
+        if (batch != null)
+        {
+            send(batch);
+        }
+        return p.future;
+    }
+    
+    public void shutdown()
+    {
+        flush();
+        timer.shutdown();
+    }
+    
+    private void flush()
+    {
+        List<Pending> batch;
+        synchronized (this)
+        {
+            batch = drain();
+        }
+        if (!batch.isEmpty())
+        {
+            send(batch);
+        }
+    }
+    
+    private List<Pending> drain()
+    {
+        if (scheduled != null)
+        {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+        List<Pending> batch = new ArrayList<>(pending);
+        pending.clear();
+        return batch;
+    }
+    
+    private void send(final List<Pending> batch)
+    {
+        if (batch.size() == 1)
+        {
+            singleRequests.incrementAndGet();
+            final Pending p = batch.get(0);
+            connector.executeAsync(p.issue, p.deadline).whenComplete((key, ex) ->
+            {
+                if (ex != null)
+                {
+                    p.future.completeExceptionally(unwrap(ex));
+                }
+                else
+                {
+                    p.future.complete(key);
+                }
+            });
+            return;
+        }
+        
+        bulkRequests.incrementAndGet();
+        batchedIssues.addAndGet(batch.size());
+        
+        // The request goes with the most patient caller's deadline; the 
+        // others stop waiting when theirs runs out.
+        Deadline deadline = batch.get(0).deadline;
+        CreateIssuesBulk.Builder builder = new CreateIssuesBulk.Builder();
+        for (Pending p : batch)
+        {
+            builder.addIssue(p.issue);
+            if (p.deadline.remaining() > deadline.remaining())
+            {
+                deadline = p.deadline;
+            }
+        }
+        
+        connector.executeAsync(builder.build(), deadline).whenComplete((results, ex) ->
+        {
+            if (ex != null)
+            {
+                Throwable cause = unwrap(ex);
+                for (Pending p : batch)
+                {
+                    p.future.completeExceptionally(cause);
+                }
+                return;
+            }
+            
+            for (int i = 0; i < batch.size(); i++)
+            {
+                CreateIssuesBulk.Created created = results.get(i);
+                if (created.isCreated())
+                {
+                    batch.get(i).future.complete(created.getKey());
+                }
+                else
+                {
+                    batch.get(i).future.completeExceptionally(
+                        new UnexpectedResponseException(created.getStatus(), created.getError()));
+                }
+            }
+        });
+    }
+    
+    private static Throwable unwrap(Throwable ex)
+    {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+    
+    /**
+     * Number of bulk requests sent.
+     */
+    public long getBulkRequests()
+    {
+        return bulkRequests.get();
+    }
+    
+    /**
+     * Number of issues created through bulk requests.
+     */
+    public long getBatchedIssues()
+    {
+        return batchedIssues.get();
+    }
+    
+    /**
+     * Number of creates sent on their own.
+     */
+    public long getSingleRequests()
+    {
+        return singleRequests.get();
+    }
+    
+    private static class Pending
+    {
+        private final CreateIssue issue;
+        private final Deadline deadline;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        
+        Pending(CreateIssue issue, Deadline deadline)
+        {
+            this.issue = issue;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.jira;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An issue as returned by {@link SearchIssueFields}: its key and only the 
+ * fields that were asked for.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class IssueFields
+{
+    private final String key;
+    private final Map<String, JsonNode> fields;
+    
+    IssueFields(String key, Map<String, JsonNode> fields)
+    {
+        this.key = key;
+        this.fields = Collections.unmodifiableMap(fields);
+    }
+
+    public String getKey()
+    {
+        return key;
+    }
+    
+    /**
+     * Returns the field's value, or null if it wasn't asked for or the 
+     * issue doesn't have it set.
+     */
+    public JsonNode getField(String name)
+    {
+        JsonNode value = fields.get(name);
+        return value == null || value.isNull() ? null : value;
+    }
+    
+    public Map<String, JsonNode> getFields()
+    {
+        return fields;
+    }
+}
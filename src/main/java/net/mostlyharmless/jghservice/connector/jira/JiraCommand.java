@@ -16,14 +16,16 @@
 
 package net.mostlyharmless.jghservice.connector.jira;
 
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import net.mostlyharmless.jghservice.connector.Codecs;
+import net.mostlyharmless.jghservice.connector.Idempotency;
+import net.mostlyharmless.jghservice.connector.Streams;
 
 /**
  *
@@ -35,14 +37,44 @@ public interface JiraCommand<T>
     final static String PUT = "PUT";
     final static String GET = "GET";
     
-    final static ObjectMapper mapper = new ObjectMapper()
-        .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
-        .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
-        .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    final static ObjectWriter writer = Codecs.commandWriter();
     
     URL getUrl(String apiUrlBase) throws MalformedURLException;
     String getJson() throws JsonProcessingException;
     String getRequestMethod();
     int getExpectedResponseCode();
     T processResponse(String jsonResponse) throws IOException;
+    
+    /**
+     * Writes the request body. The connector calls this for anything but a 
+     * GET, with a generator writing UTF-8 straight to the connection. The 
+     * default writes {@link #getJson()}; commands that can have large 
+     * bodies override this to generate them as they're sent, and build 
+     * {@link #getJson()} from it.
+     */
+    default void writeBody(JsonGenerator generator) throws IOException
+    {
+        generator.writeRaw(getJson());
+    }
+    
+    /**
+     * Decodes the response body straight from the connection. The default
+     * reads the whole body into a String and hands it to 
+     * {@link #processResponse(String)}; commands that can get large 
+     * responses override this to decode as the bytes arrive. 
+     */
+    default T processResponse(InputStream response) throws IOException
+    {
+        return processResponse(Streams.readFully(response));
+    }
+    
+    /**
+     * Determines whether the command may be retried after a failure. The 
+     * default goes by the request method; commands whose method says less
+     * than they do (e.g. a POST that only reads) override it.
+     */
+    default Idempotency getIdempotency()
+    {
+        return Idempotency.forMethod(getRequestMethod());
+    }
 }
@@ -16,19 +16,28 @@
 
 package net.mostlyharmless.jghservice.connector.jira;
 
-import java.io.BufferedReader;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.xml.bind.DatatypeConverter;
+import net.mostlyharmless.jghservice.connector.Attempt;
+import net.mostlyharmless.jghservice.connector.Bulkhead;
+import net.mostlyharmless.jghservice.connector.CircuitBreaker;
+import net.mostlyharmless.jghservice.connector.Codecs;
+import net.mostlyharmless.jghservice.connector.Deadline;
+import net.mostlyharmless.jghservice.connector.DeadlineExceededException;
+import net.mostlyharmless.jghservice.connector.Hedger;
+import net.mostlyharmless.jghservice.connector.HttpTransport;
+import net.mostlyharmless.jghservice.connector.Idempotency;
+import net.mostlyharmless.jghservice.connector.RetryPolicy;
+import net.mostlyharmless.jghservice.connector.SingleFlight;
 import net.mostlyharmless.jghservice.connector.UnexpectedResponseException;
-import net.mostlyharmless.jghservice.connector.github.GithubCommand;
-import net.mostlyharmless.jghservice.resources.ServiceConfig;
 
 /**
  *
@@ -36,99 +45,269 @@ import net.mostlyharmless.jghservice.resources.ServiceConfig;
  */
 public class JiraConnector
 {
-    private final String encodedUserPass;
+    private final HttpTransport transport;
+    private final ExecutorService executor;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker breaker;
+    private final Bulkhead bulkhead;
+    private final Hedger hedger;
+    private final SingleFlight singleFlight = new SingleFlight();
     private final String apiUrlBase;
     private static final Logger LOGGER = Logger.getLogger(JiraConnector.class.getName());
+
+    public JiraConnector(HttpTransport transport, ExecutorService executor, 
+                         RetryPolicy retryPolicy, CircuitBreaker breaker,
+                         Bulkhead bulkhead, Hedger hedger)
+    {
+        this.transport = transport;
+        this.executor = executor;
+        this.retryPolicy = retryPolicy;
+        this.breaker = breaker;
+        this.bulkhead = bulkhead;
+        this.hedger = hedger;
+        this.apiUrlBase = transport.getApiUrlBase();
+    }
     
-    public JiraConnector(ServiceConfig config)
+    public HttpTransport getTransport()
     {
-        encodedUserPass = 
-            DatatypeConverter.printBase64Binary((config.getJira().getUsername() 
-                                                 + ":" 
-                                                 + config.getJira().getPassword())
-                                                .getBytes());
-        String base = config.getJira().getUrl();
-        if (!base.endsWith("/"))
-        {
-            base = base + "/";
-        }
-        
-        apiUrlBase = base;
-        
+        return transport;
+    }
+    
+    public RetryPolicy getRetryPolicy()
+    {
+        return retryPolicy;
+    }
+    
+    public CircuitBreaker getCircuitBreaker()
+    {
+        return breaker;
+    }
+    
+    public Bulkhead getBulkhead()
+    {
+        return bulkhead;
+    }
+    
+    public Hedger getHedger()
+    {
+        return hedger;
+    }
+    
+    public SingleFlight getSingleFlight()
+    {
+        return singleFlight;
+    }
+    
+    public void shutdown()
+    {
+        executor.shutdown();
+        hedger.shutdown();
+        transport.shutdown();
     }
     
     public <T> T execute(JiraCommand<T> command) throws ExecutionException
+    {
+        return execute(command, Deadline.NONE);
+    }
+    
+    /**
+     * Executes the command, giving up if it can't be done before the 
+     * deadline. A command that gives up is recorded on the deadline as 
+     * incomplete.
+     */
+    public <T> T execute(final JiraCommand<T> command, final Deadline deadline) 
+        throws ExecutionException
+    {
+        return execute(command, deadline, true);
+    }
+    
+    /**
+     * Like {@link #execute(JiraCommand, Deadline)}, but a read is always sent 
+     * rather than joining an identical one already in flight. That one may
+     * have been sent before a write the caller has just waited for, so use
+     * this for a read that a write is going to be based on.
+     */
+    public <T> T executeFresh(final JiraCommand<T> command, final Deadline deadline) 
+        throws ExecutionException
+    {
+        return execute(command, deadline, false);
+    }
+    
+    private <T> T execute(final JiraCommand<T> command, final Deadline deadline, 
+                          final boolean shared) 
+        throws ExecutionException
     {
         try
         {
-            HttpURLConnection conn = (HttpURLConnection) command.getUrl(apiUrlBase).openConnection();
-            conn.setRequestMethod(command.getRequestMethod());
-            conn.setRequestProperty("Authorization", "Basic " + encodedUserPass);
-            conn.setDoOutput(true);
+            final URL url = command.getUrl(apiUrlBase);
             
-            if (!command.getRequestMethod().equals(GithubCommand.GET))
+            HttpTransport.Request request = 
+                new HttpTransport.Request(command.getRequestMethod(), url);
+            
+            final String json;
+            if (command.getRequestMethod().equals(JiraCommand.GET))
             {
-                conn.setRequestProperty("Content-Type", "application/json; charset=utf8");
-                try (OutputStreamWriter wr = new OutputStreamWriter(conn.getOutputStream()))
-                {
-                    wr.write(command.getJson());
-                }
+                json = null;
+            }
+            else if (command.getIdempotency() == Idempotency.SAFE)
+            {
+                // Part of the single flight key, so needed as a String anyway
+                json = command.getJson();
+                request.withJson(json);
+            }
+            else
+            {
+                json = null;
+                request.withBody(Codecs.body(command::writeBody));
             }
             
-            int responseCode = conn.getResponseCode();
+            // Bulkhead outside the retries: a rejection isn't worth retrying, 
+            // and a call backing off still holds its slot.
+            Attempt<T> attempt = () ->
+                bulkhead.execute(deadline, () ->
+                    retryPolicy.execute(command.getIdempotency(), deadline, () ->
+                        breaker.execute(() -> execute(command, request, deadline, json))));
             
+            if (command.getIdempotency() == Idempotency.SAFE)
+            {
+                // Reads are safe to send twice, so a slow one is hedged
+                Attempt<T> hedged = () -> 
+                    hedger.execute(command.getClass().getName(), deadline, attempt);
+                return shared 
+                    ? singleFlight.execute(flightKey(command, url, json), deadline, hedged)
+                    : hedged.run();
+            }
+            return attempt.run();
+        }
+        catch (DeadlineExceededException ex)
+        {
+            deadline.recordIncomplete(command.getClass().getSimpleName());
+            throw new ExecutionException(ex);
+        }
+        catch (IOException | UnexpectedResponseException ex)
+        {
+            throw new ExecutionException(ex);
+        }
+    }
+    
+    private <T> T execute(final JiraCommand<T> command, 
+                          final HttpTransport.Request request,
+                          final Deadline deadline,
+                          final String json)
+        throws IOException, UnexpectedResponseException
+    {
+        final URL url = request.getUrl();
+        return transport.execute(request, deadline, response ->
+        {
+            int responseCode = response.getResponseCode();
+
             if (responseCode != command.getExpectedResponseCode())
             {
                 LOGGER.log(Level.WARNING, "Incorrect response; expected " + command.getExpectedResponseCode() + " received " + responseCode);
-                LOGGER.log(Level.INFO, command.getUrl(apiUrlBase).toString());
-                if (!command.getRequestMethod().equals(GithubCommand.GET))
+                LOGGER.log(Level.INFO, url.toString());
+                if (request.getBody() != null)
                 {
-                    LOGGER.log(Level.INFO, command.getJson());
+                    LOGGER.log(Level.INFO, json != null ? json : bodyOf(command));
                 }
-                
+
                 if (responseCode >= 400)
                 {
-                    InputStream is = conn.getErrorStream();
-                    if (is == null)
-                    {
-                        is = conn.getInputStream();
-                    }
-                    
-                    if (is != null)
-                    {
-                        StringBuilder sb = new StringBuilder();
-                        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-                        String resp = null;
-                        while ((resp = br.readLine()) != null)
-                        {
-                            sb.append(resp);
-                        }
-                        
-                        LOGGER.log(Level.INFO, sb.toString());
-                    }
-                    throw new ExecutionException(new UnexpectedResponseException(responseCode, 
-                    conn.getResponseMessage()));
+                    LOGGER.log(Level.INFO, response.getBodyAsString());
+                    throw new UnexpectedResponseException(responseCode, 
+                        response.getResponseMessage());
                 }
-                
-                
             }
-            
-            StringBuilder sb = new StringBuilder();
-            String line;
-            BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream()));
 
-            while ((line = br.readLine()) != null)
+            return command.processResponse(response.getBody());
+        });
+    }
+    
+    /**
+     * The request body for logging; streamed bodies are generated again.
+     */
+    private static String bodyOf(JiraCommand<?> command)
+    {
+        try
+        {
+            return command.getJson();
+        }
+        catch (JsonProcessingException ex)
+        {
+            return "(body unavailable: " + ex.getMessage() + ")";
+        }
+    }
+    
+    /**
+     * Identical reads in flight at the same time are sent once. The command
+     * is part of the key as different commands can decode the same URL 
+     * differently.
+     */
+    private static String flightKey(JiraCommand<?> command, URL url, String json)
+    {
+        String key = command.getClass().getName() + " " + command.getRequestMethod() + " " + url;
+        return json == null ? key : key + " " + json;
+    }
+    
+    /**
+     * Goes through every issue the search matches, a page at a time. With 
+     * prefetch the next page is requested while the current one is being 
+     * consumed.
+     */
+    public <E> SearchIterator<E> iterate(PagedSearch<E> search, Deadline deadline, 
+                                         boolean prefetch)
+    {
+        return new SearchIterator<>(this, search, deadline, prefetch);
+    }
+    
+    public <T> CompletableFuture<T> executeAsync(JiraCommand<T> command)
+    {
+        return executeAsync(command, Deadline.NONE);
+    }
+    
+    /**
+     * Executes the command on this connector's executor. The returned future
+     * completes exceptionally with the same cause {@link #execute} would
+     * have wrapped in an ExecutionException, or with a
+     * RejectedExecutionException if the executor is saturated.
+     */
+    public <T> CompletableFuture<T> executeAsync(final JiraCommand<T> command, 
+                                                 final Deadline deadline)
+    {
+        return executeAsync(command, deadline, true);
+    }
+    
+    /**
+     * {@link #executeFresh} on this connector's executor.
+     */
+    public <T> CompletableFuture<T> executeFreshAsync(final JiraCommand<T> command, 
+                                                      final Deadline deadline)
+    {
+        return executeAsync(command, deadline, false);
+    }
+    
+    private <T> CompletableFuture<T> executeAsync(final JiraCommand<T> command, 
+                                                  final Deadline deadline,
+                                                  final boolean shared)
+    {
+        try
+        {
+            return CompletableFuture.supplyAsync(() ->
             {
-                sb.append(line);
-            }
-
-            return command.processResponse(sb.toString());
-            
-            
+                try
+                {
+                    return execute(command, deadline, shared);
+                }
+                catch (ExecutionException ex)
+                {
+                    throw new CompletionException(ex.getCause());
+                }
+            }, executor);
         }
-        catch (IOException ex)
+        catch (RejectedExecutionException ex)
         {
-            throw new ExecutionException(ex);
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+            return future;
         }
     }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.jira;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import net.mostlyharmless.jghservice.connector.Codecs;
+import net.mostlyharmless.jghservice.connector.Idempotency;
+
+/**
+ * A JQL search. JIRA returns results a page at a time; executing the 
+ * command returns the page starting at startAt (the first, by default) and 
+ * {@link JiraConnector#iterate} goes through all of them.
+ * 
+ * Subclasses decide which fields are asked for and what each issue is 
+ * decoded into.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public abstract class PagedSearch<E> implements JiraCommand<SearchResults<E>>
+{
+    @JsonProperty
+    private final String jql;
+    @JsonProperty
+    private final Integer startAt;
+    @JsonProperty
+    private final Integer maxResults;
+    @JsonProperty
+    private final List<String> fields;
+    
+    protected PagedSearch(Init<?> init, List<String> fields)
+    {
+        this(init.jql, init.startAt, init.maxResults, fields);
+    }
+    
+    protected PagedSearch(String jql, Integer startAt, Integer maxResults, List<String> fields)
+    {
+        if (jql == null || jql.isEmpty())
+        {
+            throw new IllegalStateException("JQL cannot be null or empty.");
+        }
+        this.jql = jql;
+        this.startAt = startAt;
+        this.maxResults = maxResults;
+        this.fields = fields;
+    }
+    
+    /**
+     * Returns the same search, starting at a different result.
+     */
+    protected abstract PagedSearch<E> startingAt(int startAt);
+    
+    /**
+     * Decodes one issue; the parser is positioned at its START_OBJECT and 
+     * must be left on its END_OBJECT.
+     */
+    protected abstract E readIssue(JsonParser jp) throws IOException;
+
+    public String getJql()
+    {
+        return jql;
+    }
+    
+    public Integer getMaxResults()
+    {
+        return maxResults;
+    }
+    
+    public List<String> getFields()
+    {
+        return fields;
+    }
+    
+    @Override
+    public URL getUrl(String apiUrlBase) throws MalformedURLException
+    {
+        return new URL(apiUrlBase + "search");
+    }
+
+    @Override
+    public String getJson() throws JsonProcessingException
+    {
+        return writer.writeValueAsString(this);
+    }
+
+    @Override
+    public String getRequestMethod()
+    {
+        return POST;
+    }
+
+    @Override
+    public Idempotency getIdempotency()
+    {
+        // Only reads; POST is just how the JQL gets sent
+        return Idempotency.SAFE;
+    }
+
+    @Override
+    public int getExpectedResponseCode()
+    {
+        return 200;
+    }
+
+    @Override
+    public SearchResults<E> processResponse(String jsonResponse) throws IOException
+    {
+        return processResponse(new ByteArrayInputStream(jsonResponse.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    @Override
+    public SearchResults<E> processResponse(InputStream response) throws IOException
+    {
+        // Each issue is decoded as it's read rather than building a tree of 
+        // the whole response first.
+        int start = 0;
+        int max = 0;
+        int total = 0;
+        List<E> issues = new ArrayList<>();
+        try (JsonParser jp = Codecs.factory().createParser(response))
+        {
+            if (jp.nextToken() != JsonToken.START_OBJECT)
+            {
+                throw new JsonParseException("Expected search results object", jp.getCurrentLocation());
+            }
+            
+            while (jp.nextToken() == JsonToken.FIELD_NAME)
+            {
+                String field = jp.getCurrentName();
+                JsonToken value = jp.nextToken();
+                if (field.equals("issues") && value == JsonToken.START_ARRAY)
+                {
+                    while (jp.nextToken() == JsonToken.START_OBJECT)
+                    {
+                        issues.add(readIssue(jp));
+                    }
+                }
+                else if (field.equals("startAt"))
+                {
+                    start = jp.getIntValue();
+                }
+                else if (field.equals("maxResults"))
+                {
+                    max = jp.getIntValue();
+                }
+                else if (field.equals("total"))
+                {
+                    total = jp.getIntValue();
+                }
+                else
+                {
+                    jp.skipChildren();
+                }
+            }
+        }
+        return new SearchResults<>(start, max, total, issues);
+    }
+    
+    protected abstract static class Init<T extends Init<T>>
+    {
+        private String jql;
+        private Integer startAt;
+        private Integer maxResults;
+        
+        public T withJQL(String query)
+        {
+            this.jql = query;
+            return self();
+        }
+        
+        public T withStartAt(int startAt)
+        {
+            this.startAt = startAt;
+            return self();
+        }
+        
+        /**
+         * Page size. JIRA caps this (by default at 50 when all fields are 
+         * returned, 1000 otherwise) and silently uses the lower value.
+         */
+        public T withMaxResults(int maxResults)
+        {
+            this.maxResults = maxResults;
+            return self();
+        }
+        
+        protected abstract T self();
+    }
+}
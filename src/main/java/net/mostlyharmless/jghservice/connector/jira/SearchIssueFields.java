@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.jira;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import net.mostlyharmless.jghservice.connector.Codecs;
+
+/**
+ * Searches for issues, asking JIRA for only the key and the named fields 
+ * (e.g. customfield_10001) rather than every field of every issue.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class SearchIssueFields extends PagedSearch<IssueFields>
+{
+    private SearchIssueFields(Builder builder)
+    {
+        super(builder, fieldList(builder.fields));
+    }
+    
+    private SearchIssueFields(SearchIssueFields search, int startAt)
+    {
+        super(search.getJql(), startAt, search.getMaxResults(), search.getFields());
+    }
+
+    @Override
+    protected SearchIssueFields startingAt(int startAt)
+    {
+        return new SearchIssueFields(this, startAt);
+    }
+    
+    private static List<String> fieldList(List<String> fields)
+    {
+        // The key is always returned; asking for it alone keeps JIRA from
+        // falling back to its default field set.
+        return fields.isEmpty() ? Arrays.asList("key") : fields;
+    }
+
+    @Override
+    protected IssueFields readIssue(JsonParser jp) throws IOException
+    {
+        String key = null;
+        Map<String, JsonNode> fields = new HashMap<>();
+        while (jp.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = jp.getCurrentName();
+            JsonToken value = jp.nextToken();
+            if (name.equals("key"))
+            {
+                key = jp.getText();
+            }
+            else if (name.equals("fields") && value == JsonToken.START_OBJECT)
+            {
+                while (jp.nextToken() == JsonToken.FIELD_NAME)
+                {
+                    String field = jp.getCurrentName();
+                    jp.nextToken();
+                    fields.put(field, Codecs.treeReader().<JsonNode>readTree(jp));
+                }
+            }
+            else
+            {
+                jp.skipChildren();
+            }
+        }
+        return new IssueFields(key, fields);
+    }
+    
+    public static class Builder extends Init<Builder>
+    {
+        private final List<String> fields = new LinkedList<>();
+        
+        public Builder withField(String field)
+        {
+            fields.add(field);
+            return this;
+        }
+        
+        public Builder withFields(String... fields)
+        {
+            this.fields.addAll(Arrays.asList(fields));
+            return this;
+        }
+        
+        @Override
+        protected Builder self()
+        {
+            return this;
+        }
+        
+        public SearchIssueFields build()
+        {
+            return new SearchIssueFields(this);
+        }
+    }
+    
+}
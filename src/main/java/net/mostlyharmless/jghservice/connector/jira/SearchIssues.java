@@ -16,73 +16,49 @@
 
 package net.mostlyharmless.jghservice.connector.jira;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JavaType;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.List;
-import net.mostlyharmless.jghservice.resources.ObjectMapperProvider;
+import net.mostlyharmless.jghservice.connector.Codecs;
 import net.mostlyharmless.jghservice.resources.jira.JiraEvent;
 
 /**
+ * Searches for whole issues. When only the key and a few fields are needed
+ * use {@link SearchIssueFields} instead; it's a fraction of the response.
  *
  * @author Brian Roach <roach at mostlyharmless dot net>
  */
-public class SearchIssues implements JiraCommand<List<JiraEvent.Issue>>
+public class SearchIssues extends PagedSearch<JiraEvent.Issue>
 {
-    @JsonProperty
-    private final String jql;
+    private static final ObjectReader reader = Codecs.reader(JiraEvent.Issue.class);
     
     private SearchIssues(Builder builder)
     {
-        this.jql = builder.jql;
+        super(builder, null);
     }
-
-    @Override
-    public URL getUrl(String apiUrlBase) throws MalformedURLException
-    {
-        return new URL(apiUrlBase + "search");
-    }
-
-    @Override
-    public String getJson() throws JsonProcessingException
-    {
-        return mapper.writeValueAsString(this);
-    }
-
-    @Override
-    public String getRequestMethod()
+    
+    private SearchIssues(SearchIssues search, int startAt)
     {
-        return POST;
+        super(search.getJql(), startAt, search.getMaxResults(), null);
     }
 
     @Override
-    public int getExpectedResponseCode()
+    protected SearchIssues startingAt(int startAt)
     {
-        return 200;
+        return new SearchIssues(this, startAt);
     }
 
     @Override
-    public List<JiraEvent.Issue> processResponse(String jsonResponse) throws IOException
+    protected JiraEvent.Issue readIssue(JsonParser jp) throws IOException
     {
-        ObjectMapper m = new ObjectMapperProvider().getContext(JiraEvent.Issue.class);
-        ObjectNode root = (ObjectNode) m.readTree(jsonResponse);
-        JavaType t = m.getTypeFactory().constructCollectionType(List.class, JiraEvent.Issue.class);
-        return m.convertValue(root.get("issues"), t);
+        return reader.readValue(jp);
     }
     
-    public static class Builder
+    public static class Builder extends Init<Builder>
     {
-        private String jql;
-        
-        public Builder withJQL(String query)
+        @Override
+        protected Builder self()
         {
-            this.jql = query;
             return this;
         }
         
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.jira;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import net.mostlyharmless.jghservice.connector.Deadline;
+
+/**
+ * Walks through every issue a {@link PagedSearch} matches, advancing 
+ * startAt from page to page until JIRA's total is reached.
+ * 
+ * Pages are fetched lazily as the issues are consumed, so a caller looking 
+ * for one issue can stop as soon as it finds it and the rest of the pages 
+ * are never requested. With prefetch on, the next page is requested in 
+ * the background as soon as the current one arrives. Call {@link #close()} 
+ * when stopping early so a prefetch in flight is abandoned.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class SearchIterator<E> implements AutoCloseable
+{
+    private final JiraConnector connector;
+    private final PagedSearch<E> search;
+    private final Deadline deadline;
+    private final boolean prefetch;
+    
+    private Iterator<E> current = Collections.<E>emptyIterator();
+    private PagedSearch<E> next;
+    private CompletableFuture<SearchResults<E>> pending;
+    private int pages;
+    private int total = -1;
+    
+    SearchIterator(JiraConnector connector, PagedSearch<E> search, 
+                   Deadline deadline, boolean prefetch)
+    {
+        this.connector = connector;
+        this.search = search;
+        this.next = search;
+        this.deadline = deadline;
+        this.prefetch = prefetch;
+    }
+    
+    public boolean hasNext() throws ExecutionException
+    {
+        while (!current.hasNext())
+        {
+            SearchResults<E> page = nextPage();
+            if (page == null)
+            {
+                return false;
+            }
+            current = page.getIssues().iterator();
+        }
+        return true;
+    }
+    
+    public E next() throws ExecutionException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+    
+    /**
+     * Number of pages fetched so far.
+     */
+    public int getPages()
+    {
+        return pages;
+    }
+    
+    /**
+     * Number of issues matching the search as of the first page, or -1 if 
+     * nothing has been fetched yet. 
+     */
+    public int getTotal()
+    {
+        return total;
+    }
+    
+    @Override
+    public void close()
+    {
+        if (pending != null)
+        {
+            pending.cancel(false);
+            pending = null;
+        }
+        next = null;
+        current = Collections.<E>emptyIterator();
+    }
+    
+    private SearchResults<E> nextPage() throws ExecutionException
+    {
+        SearchResults<E> page;
+        if (pending != null)
+        {
+            try
+            {
+                page = pending.get();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new ExecutionException(ex);
+            }
+            finally
+            {
+                pending = null;
+            }
+        }
+        else if (next != null)
+        {
+            page = connector.execute(next, deadline);
+        }
+        else
+        {
+            return null;
+        }
+        
+        pages++;
+        if (total < 0)
+        {
+            total = page.getTotal();
+        }
+        next = page.hasMore() ? search.startingAt(page.getNextStartAt()) : null;
+        if (prefetch && next != null)
+        {
+            pending = connector.executeAsync(next, deadline);
+            next = null;
+        }
+        return page;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.jira;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a JIRA search.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class SearchResults<E>
+{
+    private final int startAt;
+    private final int maxResults;
+    private final int total;
+    private final List<E> issues;
+    
+    SearchResults(int startAt, int maxResults, int total, List<E> issues)
+    {
+        this.startAt = startAt;
+        this.maxResults = maxResults;
+        this.total = total;
+        this.issues = Collections.unmodifiableList(issues);
+    }
+
+    public int getStartAt()
+    {
+        return startAt;
+    }
+
+    /**
+     * The page size JIRA actually used, which may be less than was asked 
+     * for.
+     */
+    public int getMaxResults()
+    {
+        return maxResults;
+    }
+
+    /**
+     * Number of issues matching the query across all pages.
+     */
+    public int getTotal()
+    {
+        return total;
+    }
+
+    public List<E> getIssues()
+    {
+        return issues;
+    }
+    
+    public boolean hasMore()
+    {
+        return !issues.isEmpty() && getNextStartAt() < total;
+    }
+    
+    public int getNextStartAt()
+    {
+        return startAt + issues.size();
+    }
+}
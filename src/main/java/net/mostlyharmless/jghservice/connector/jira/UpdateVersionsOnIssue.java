@@ -16,16 +16,14 @@
 
 package net.mostlyharmless.jghservice.connector.jira;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.LinkedList;
 import java.util.List;
+import net.mostlyharmless.jghservice.connector.Codecs;
 
 /**
  *
@@ -57,61 +55,54 @@ public class UpdateVersionsOnIssue implements JiraCommand<String>
     @Override
     public String getJson() throws JsonProcessingException
     {
-        JsonNodeFactory factory = JsonNodeFactory.instance;
-        ObjectNode root = factory.objectNode();
-        ObjectNode update = factory.objectNode();
-        root.put("update", update);
+        return Codecs.toString(this::writeBody);
+    }
+    
+    @Override
+    public void writeBody(JsonGenerator generator) throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("update");
         
         if (!fixVersionsAdded.isEmpty() || !fixVersionsRemoved.isEmpty())
         {
-            ArrayNode fixVersions = factory.arrayNode();
-            for (String version : fixVersionsAdded)
-            {
-                ObjectNode add = factory.objectNode();
-                ObjectNode addVersion = factory.objectNode();
-                addVersion.put("name", version);
-                add.put("add", addVersion);
-                fixVersions.add(add);
-            }
-            
-            for (String version : fixVersionsRemoved)
-            {
-                ObjectNode remove = factory.objectNode();
-                ObjectNode removeVersion = factory.objectNode();
-                removeVersion.put("name", version);
-                remove.put("remove", removeVersion);
-                fixVersions.add(remove);
-            }
-            
-            update.put("fixVersions", fixVersions);
+            writeChanges(generator, "fixVersions", fixVersionsAdded, fixVersionsRemoved);
         }
         
         if (!affectsVersionsAdded.isEmpty() || !affectsVersionsRemoved.isEmpty())
         {
-            ArrayNode affectsVersions = factory.arrayNode();
-            for (String version : affectsVersionsAdded)
-            {
-                ObjectNode add = factory.objectNode();
-                ObjectNode addVersion = factory.objectNode();
-                addVersion.put("name", version);
-                add.put("add", addVersion);
-                affectsVersions.add(add);
-            }
-            
-            for (String version : affectsVersionsRemoved)
-            {
-                ObjectNode remove = factory.objectNode();
-                ObjectNode removeVersion = factory.objectNode();
-                removeVersion.put("name", version);
-                remove.put("remove", removeVersion);
-                affectsVersions.add(remove);
-            }
-            
-            update.put("versions", affectsVersions);
+            writeChanges(generator, "versions", affectsVersionsAdded, affectsVersionsRemoved);
         }
         
-        return new ObjectMapper().writeValueAsString(root);
-        
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+    
+    private static void writeChanges(JsonGenerator generator, String field, 
+                                     List<String> added, List<String> removed) 
+        throws IOException
+    {
+        generator.writeArrayFieldStart(field);
+        for (String version : added)
+        {
+            writeChange(generator, "add", version);
+        }
+        for (String version : removed)
+        {
+            writeChange(generator, "remove", version);
+        }
+        generator.writeEndArray();
+    }
+    
+    private static void writeChange(JsonGenerator generator, String operation, 
+                                    String version) 
+        throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart(operation);
+        generator.writeStringField("name", version);
+        generator.writeEndObject();
+        generator.writeEndObject();
     }
 
     @Override
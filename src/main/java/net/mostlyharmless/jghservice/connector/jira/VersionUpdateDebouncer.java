@@ -0,0 +1,381 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.connector.jira;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.mostlyharmless.jghservice.connector.Deadline;
+import net.mostlyharmless.jghservice.resources.jira.JiraEvent;
+
+/**
+ * Folds version label changes to the same JIRA issue into one update.
+ * 
+ * Adding three "Fixed in:" labels to a Github issue and removing an 
+ * "Affects:" one is four events, and each used to read the JIRA issue 
+ * and update its versions. Here each change is held for window 
+ * milliseconds, and every further change to the same issue starts the 
+ * wait over (up to maxDelay after the first), so a burst of label edits 
+ * ends up as one set of changes. For each version only the last change 
+ * counts: labeled means it should be there, unlabeled that it shouldn't.
+ * 
+ * When the wait is over the issue is read once and a single 
+ * {@link UpdateVersionsOnIssue} adds and removes whatever doesn't match 
+ * yet; if everything already matches nothing is written. Updates to the 
+ * same issue are sent one after the other so each read sees the last 
+ * write.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class VersionUpdateDebouncer
+{
+    private static final Logger LOGGER = Logger.getLogger(VersionUpdateDebouncer.class.getName());
+    
+    private final JiraConnector connector;
+    private final long window;
+    private final long maxDelay;
+    private final ScheduledExecutorService timer = 
+        Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r, "jira-version-debouncer");
+            t.setDaemon(true);
+            return t;
+        });
+    
+    // guarded by this
+    private final Map<String, Pending> pending = new HashMap<>();
+    private final Map<String, CompletableFuture<Void>> inFlight = new HashMap<>();
+    
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    
+    /**
+     * @param window how long (ms) to wait after an issue's latest change 
+     * for another; 0 sends every change as it comes
+     * @param maxDelay the longest (ms) an issue's first change is held
+     */
+    public VersionUpdateDebouncer(JiraConnector connector, long window, long maxDelay)
+    {
+        this.connector = connector;
+        this.window = window;
+        this.maxDelay = maxDelay;
+    }
+    
+    /**
+     * Adds (present) or removes a fix version.
+     * 
+     * @return completed once the change has been made, or found to be 
+     * there already
+     */
+    public CompletableFuture<Void> fixVersion(String jiraIssueKey, String version, 
+                                              boolean present, Deadline deadline)
+    {
+        return submit(jiraIssueKey, version, present, true, deadline);
+    }
+    
+    /**
+     * Adds (present) or removes an affects version.
+     */
+    public CompletableFuture<Void> affectsVersion(String jiraIssueKey, String version, 
+                                                  boolean present, Deadline deadline)
+    {
+        return submit(jiraIssueKey, version, present, false, deadline);
+    }
+    
+    private CompletableFuture<Void> submit(final String key, String version, boolean present, 
+                                           boolean fix, Deadline deadline)
+    {
+        submitted.incrementAndGet();
+        if (window <= 0)
+        {
+            Pending p = new Pending(deadline);
+            p.set(version, present, fix);
+            dispatch(key, p);
+            return p.future;
+        }
+        
+        synchronized (this)
+        {
+            Pending p = pending.get(key);
+            if (p == null)
+            {
+                p = new Pending(deadline);
+                pending.put(key, p);
+            }
+            else
+            {
+                p.merge(deadline);
+                p.flush.cancel(false);
+            }
+            p.set(version, present, fix);
+            
+            long wait = Math.min(window, p.firstAt + maxDelay - System.currentTimeMillis());
+            p.flush = timer.schedule(() -> flush(key), Math.max(0, wait), TimeUnit.MILLISECONDS);
+            return p.future;
+        }
+    }
+    
+    /**
+     * Sends everything still held back and waits up to the timeout (ms) 
+     * for it to be written, so it isn't cut off by the connector stopping.
+     */
+    public void shutdown(long timeout)
+    {
+        List<String> keys;
+        synchronized (this)
+        {
+            keys = new ArrayList<>(pending.keySet());
+        }
+        for (String key : keys)
+        {
+            flush(key);
+        }
+        timer.shutdown();
+        
+        // Each issue's latest update only completes after the ones before it
+        List<CompletableFuture<Void>> sending;
+        synchronized (this)
+        {
+            sending = new ArrayList<>(inFlight.values());
+        }
+        try
+        {
+            CompletableFuture.allOf(sending.toArray(new CompletableFuture<?>[sending.size()]))
+                .get(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException ex)
+        {
+            // Each caller has been told about its own failure
+        }
+        catch (TimeoutException ex)
+        {
+            LOGGER.log(Level.WARNING, "Version updates for {0} issues were still being sent at shutdown", 
+                       sending.size());
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void flush(String key)
+    {
+        Pending p;
+        synchronized (this)
+        {
+            p = pending.remove(key);
+        }
+        if (p != null)
+        {
+            dispatch(key, p);
+        }
+    }
+    
+    /**
+     * Sends the update once the previous one to the same issue (if any) 
+     * is done, so its read sees what that one wrote.
+     */
+    private void dispatch(final String key, final Pending p)
+    {
+        CompletableFuture<Void> previous;
+        synchronized (this)
+        {
+            previous = inFlight.put(key, p.future);
+        }
+        p.future.whenComplete((result, ex) ->
+        {
+            synchronized (this)
+            {
+                inFlight.remove(key, p.future);
+            }
+        });
+        
+        if (previous == null)
+        {
+            send(key, p);
+        }
+        else
+        {
+            previous.whenComplete((result, ex) -> send(key, p));
+        }
+    }
+    
+    private void send(final String key, final Pending p)
+    {
+        reads.incrementAndGet();
+        GetIssue get = 
+            new GetIssue.Builder()
+                .withIssueKey(key)
+                .build();
+        
+        // Not shared with a read already in flight, which could have been
+        // sent before the previous update landed
+        connector.executeFreshAsync(get, p.deadline)
+            .thenCompose(issue ->
+            {
+                UpdateVersionsOnIssue update = p.toUpdate(key, issue);
+                if (update == null)
+                {
+                    unchanged.incrementAndGet();
+                    return CompletableFuture.<String>completedFuture(null);
+                }
+                writes.incrementAndGet();
+                return connector.executeAsync(update, p.deadline);
+            })
+            .whenComplete((result, ex) ->
+            {
+                if (ex != null)
+                {
+                    p.future.completeExceptionally(unwrap(ex));
+                }
+                else
+                {
+                    p.future.complete(null);
+                }
+            });
+    }
+    
+    private static Throwable unwrap(Throwable ex)
+    {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+    
+    /**
+     * Number of version changes submitted.
+     */
+    public long getSubmitted()
+    {
+        return submitted.get();
+    }
+    
+    /**
+     * Number of times an issue was read for them.
+     */
+    public long getReads()
+    {
+        return reads.get();
+    }
+    
+    /**
+     * Number of UpdateVersionsOnIssue requests sent.
+     */
+    public long getWrites()
+    {
+        return writes.get();
+    }
+    
+    /**
+     * Number of reads after which there was nothing to write.
+     */
+    public long getUnchanged()
+    {
+        return unchanged.get();
+    }
+    
+    public synchronized int getPending()
+    {
+        return pending.size();
+    }
+    
+    private static class Pending
+    {
+        // version to whether it should be there, in the order first changed
+        private final Map<String, Boolean> fixVersions = new LinkedHashMap<>();
+        private final Map<String, Boolean> affectsVersions = new LinkedHashMap<>();
+        private final long firstAt = System.currentTimeMillis();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private Deadline deadline;
+        private ScheduledFuture<?> flush;
+        
+        Pending(Deadline deadline)
+        {
+            this.deadline = deadline;
+        }
+        
+        void set(String version, boolean present, boolean fix)
+        {
+            (fix ? fixVersions : affectsVersions).put(version, present);
+        }
+        
+        void merge(Deadline laterDeadline)
+        {
+            // The update goes with the most patient caller's deadline
+            if (laterDeadline.remaining() > deadline.remaining())
+            {
+                deadline = laterDeadline;
+            }
+        }
+        
+        /**
+         * The changes the issue still needs, or null if it has them all.
+         */
+        UpdateVersionsOnIssue toUpdate(String key, JiraEvent.Issue issue)
+        {
+            UpdateVersionsOnIssue.Builder builder = 
+                new UpdateVersionsOnIssue.Builder()
+                    .withIssueKey(key);
+            boolean changed = false;
+            
+            for (Map.Entry<String, Boolean> entry : fixVersions.entrySet())
+            {
+                boolean has = issue.getFixVersions().contains(entry.getKey());
+                if (entry.getValue() && !has)
+                {
+                    builder.addFixVersion(entry.getKey());
+                    changed = true;
+                }
+                else if (!entry.getValue() && has)
+                {
+                    builder.removeFixVersion(entry.getKey());
+                    changed = true;
+                }
+            }
+            
+            for (Map.Entry<String, Boolean> entry : affectsVersions.entrySet())
+            {
+                boolean has = issue.getAffectsVersions().contains(entry.getKey());
+                if (entry.getValue() && !has)
+                {
+                    builder.addAffectsVersion(entry.getKey());
+                    changed = true;
+                }
+                else if (!entry.getValue() && has)
+                {
+                    builder.removeAffectsVersion(entry.getKey());
+                    changed = true;
+                }
+            }
+            
+            return changed ? builder.build() : null;
+        }
+    }
+}
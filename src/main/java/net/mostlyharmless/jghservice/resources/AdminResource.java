@@ -0,0 +1,355 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import net.mostlyharmless.jghservice.connector.Bulkhead;
+import net.mostlyharmless.jghservice.connector.CircuitBreaker;
+import net.mostlyharmless.jghservice.connector.Hedger;
+import net.mostlyharmless.jghservice.connector.RetryPolicy;
+import net.mostlyharmless.jghservice.connector.SingleFlight;
+import net.mostlyharmless.jghservice.connector.github.GithubConnector;
+import net.mostlyharmless.jghservice.connector.github.IssueWriteCoalescer;
+import net.mostlyharmless.jghservice.connector.github.RateLimitGovernor;
+import net.mostlyharmless.jghservice.connector.github.ResponseCache;
+import net.mostlyharmless.jghservice.connector.jira.IssueCreateBatcher;
+import net.mostlyharmless.jghservice.connector.jira.JiraConnector;
+import net.mostlyharmless.jghservice.connector.jira.VersionUpdateDebouncer;
+
+/**
+ * Operational endpoints for looking at the state of the service.
+ * 
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+@Path("/admin")
+public class AdminResource
+{
+    @Inject
+    JiraConnector jiraConnector;
+    @Inject
+    GithubConnector githubConnector;
+    @Inject
+    IssueCreateBatcher issueBatcher;
+    @Inject
+    IssueWriteCoalescer writeCoalescer;
+    @Inject
+    Warmup warmup;
+    @Inject
+    EventBulkheads eventBulkheads;
+    @Inject
+    WebhookQueue webhookQueue;
+    @Inject
+    WebhookJournal journal;
+    @Inject
+    WebhookDeduplicator deduplicator;
+    @Inject
+    VersionUpdateDebouncer versionDebouncer;
+    
+    @GET
+    @Path("cache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode cache()
+    {
+        ResponseCache cache = githubConnector.getResponseCache();
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("enabled", cache.isEnabled());
+        node.put("hits", cache.getHits());
+        node.put("misses", cache.getMisses());
+        node.put("revalidations", cache.getRevalidations());
+        node.put("evictions", cache.getEvictions());
+        node.put("entries", cache.getSize());
+        node.put("bytes", cache.getBytes());
+        node.put("maxBytes", cache.getMaxBytes());
+        return node;
+    }
+    
+    @GET
+    @Path("ratelimit")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode rateLimit()
+    {
+        RateLimitGovernor governor = githubConnector.getRateLimitGovernor();
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("limit", governor.getLimit());
+        node.put("remaining", governor.getRemaining());
+        node.put("resetAt", governor.getResetAt());
+        node.put("pausedUntil", governor.getPausedUntil());
+        node.put("parked", governor.getParked());
+        node.put("parkedMillis", governor.getParkedMillis());
+        node.put("primaryLimited", governor.getPrimaryLimited());
+        node.put("secondaryLimited", governor.getSecondaryLimited());
+        return node;
+    }
+    
+    @GET
+    @Path("retry")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode retry()
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("jira", retryStats(jiraConnector.getRetryPolicy()));
+        node.put("github", retryStats(githubConnector.getRetryPolicy()));
+        return node;
+    }
+    
+    private ObjectNode retryStats(RetryPolicy policy)
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("retries", policy.getRetries());
+        node.put("budget", policy.getBudget());
+        node.put("budgetExhausted", policy.getBudgetExhausted());
+        node.put("givenUp", policy.getGivenUp());
+        return node;
+    }
+    
+    @GET
+    @Path("breakers")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode breakers()
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("jira", breakerStats(jiraConnector.getCircuitBreaker()));
+        node.put("github", breakerStats(githubConnector.getCircuitBreaker()));
+        return node;
+    }
+    
+    private ObjectNode breakerStats(CircuitBreaker breaker)
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("name", breaker.getName());
+        node.put("state", breaker.getState().name());
+        node.put("calls", breaker.getCalls());
+        node.put("failureRate", breaker.getFailureRate());
+        node.put("slowCallRate", breaker.getSlowCallRate());
+        node.put("rejected", breaker.getRejected());
+        node.put("timesOpened", breaker.getTimesOpened());
+        return node;
+    }
+    
+    @GET
+    @Path("bulkheads")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode bulkheads()
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("jira", bulkheadStats(jiraConnector.getBulkhead()));
+        node.put("github", bulkheadStats(githubConnector.getBulkhead()));
+        ObjectNode events = node.putObject("events");
+        for (Bulkhead bulkhead : eventBulkheads.getAll())
+        {
+            events.put(bulkhead.getName(), bulkheadStats(bulkhead));
+        }
+        return node;
+    }
+    
+    private ObjectNode bulkheadStats(Bulkhead bulkhead)
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("maxConcurrent", bulkhead.getMaxConcurrent());
+        node.put("active", bulkhead.getActive());
+        node.put("peak", bulkhead.getPeak());
+        node.put("waiting", bulkhead.getWaiting());
+        node.put("admitted", bulkhead.getAdmitted());
+        node.put("rejected", bulkhead.getRejected());
+        node.put("waitMillis", bulkhead.getWaitMillis());
+        return node;
+    }
+    
+    @GET
+    @Path("queue")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode queue()
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("capacity", webhookQueue.getCapacity());
+        node.put("depth", webhookQueue.getDepth());
+        node.put("active", webhookQueue.getActive());
+        node.put("enqueued", webhookQueue.getEnqueued());
+        node.put("rejected", webhookQueue.getRejected());
+        node.put("completed", webhookQueue.getCompleted());
+        node.put("failed", webhookQueue.getFailed());
+        node.put("waitMillis", webhookQueue.getWaitMillis());
+        node.put("maxWaitMillis", webhookQueue.getMaxWaitMillis());
+        node.put("processingMillis", webhookQueue.getProcessingMillis());
+        node.put("maxProcessingMillis", webhookQueue.getMaxProcessingMillis());
+        ArrayNode partitions = node.putArray("partitions");
+        for (WebhookQueue.Partition partition : webhookQueue.getPartitions())
+        {
+            ObjectNode p = partitions.addObject();
+            p.put("index", partition.getIndex());
+            p.put("capacity", partition.getCapacity());
+            p.put("depth", partition.getDepth());
+            p.put("maxDepth", partition.getMaxDepth());
+            p.put("enqueued", partition.getEnqueued());
+            p.put("rejected", partition.getRejected());
+            p.put("hot", partition.isHot());
+            p.put("timesHot", partition.getTimesHot());
+            p.put("lastKey", partition.getLastKey());
+        }
+        return node;
+    }
+    
+    @GET
+    @Path("dedup")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode dedup()
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("size", deduplicator.getSize());
+        node.put("checked", deduplicator.getChecked());
+        node.put("duplicates", deduplicator.getDuplicates());
+        node.put("evicted", deduplicator.getEvicted());
+        return node;
+    }
+    
+    @GET
+    @Path("journal")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode journal()
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("enabled", journal.isEnabled());
+        node.put("appended", journal.getAppended());
+        node.put("appendedBytes", journal.getAppendedBytes());
+        node.put("completed", journal.getCompleted());
+        node.put("pending", journal.getPending());
+        node.put("replayed", journal.getReplayed());
+        node.put("backlog", journal.getBacklog());
+        node.put("segments", journal.getSegments());
+        node.put("syncs", journal.getSyncs());
+        node.put("syncMillis", journal.getSyncMillis());
+        return node;
+    }
+    
+    @GET
+    @Path("hedge")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode hedge()
+    {
+        Hedger hedger = jiraConnector.getHedger();
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("enabled", hedger.isEnabled());
+        node.put("calls", hedger.getCalls());
+        node.put("hedged", hedger.getHedged());
+        node.put("hedgeWins", hedger.getHedgeWins());
+        node.put("budget", hedger.getBudget());
+        node.put("budgetExhausted", hedger.getBudgetExhausted());
+        node.put("saturated", hedger.getSaturated());
+        ObjectNode thresholds = node.putObject("thresholds");
+        for (Map.Entry<String, Long> entry : hedger.getThresholds().entrySet())
+        {
+            thresholds.put(entry.getKey(), entry.getValue());
+        }
+        return node;
+    }
+    
+    @GET
+    @Path("singleflight")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode singleFlight()
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("jira", singleFlightStats(jiraConnector.getSingleFlight()));
+        node.put("github", singleFlightStats(githubConnector.getSingleFlight()));
+        return node;
+    }
+    
+    private ObjectNode singleFlightStats(SingleFlight singleFlight)
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("executed", singleFlight.getExecuted());
+        node.put("coalesced", singleFlight.getCoalesced());
+        node.put("inFlight", singleFlight.getInFlight());
+        return node;
+    }
+    
+    @GET
+    @Path("bulkcreate")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode bulkCreate()
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("bulkRequests", issueBatcher.getBulkRequests());
+        node.put("batchedIssues", issueBatcher.getBatchedIssues());
+        node.put("singleRequests", issueBatcher.getSingleRequests());
+        return node;
+    }
+    
+    @GET
+    @Path("coalesce")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode coalesce()
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("submitted", writeCoalescer.getSubmitted());
+        node.put("writes", writeCoalescer.getWrites());
+        node.put("labelReads", writeCoalescer.getLabelReads());
+        node.put("pending", writeCoalescer.getPending());
+        return node;
+    }
+    
+    @GET
+    @Path("versions")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonNode versions()
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("submitted", versionDebouncer.getSubmitted());
+        node.put("reads", versionDebouncer.getReads());
+        node.put("writes", versionDebouncer.getWrites());
+        node.put("unchanged", versionDebouncer.getUnchanged());
+        node.put("pending", versionDebouncer.getPending());
+        return node;
+    }
+    
+    /**
+     * 200 once warmup is done, 503 until then.
+     */
+    @GET
+    @Path("ready")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response ready()
+    {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("ready", warmup.isReady());
+        node.put("warmupEnabled", warmup.isEnabled());
+        node.put("elapsed", warmup.getElapsed());
+        ObjectNode timings = node.putObject("timings");
+        for (Map.Entry<String, Long> entry : warmup.getTimings().entrySet())
+        {
+            timings.put(entry.getKey(), entry.getValue());
+        }
+        ObjectNode failures = node.putObject("failures");
+        for (Map.Entry<String, String> entry : warmup.getFailures().entrySet())
+        {
+            failures.put(entry.getKey(), entry.getValue());
+        }
+        Response.Status status = 
+            warmup.isReady() ? Response.Status.OK : Response.Status.SERVICE_UNAVAILABLE;
+        return Response.status(status).entity(node).build();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.resources;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.mostlyharmless.jghservice.connector.Bulkhead;
+
+/**
+ * One {@link Bulkhead} per kind of webhook event, so e.g. a burst of 
+ * comments to mirror can't take every thread away from pull request 
+ * linking. Events are named after the source and its action or event 
+ * type: "github:opened", "github:created", "jira:issue_updated", ...
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class EventBulkheads
+{
+    private final ServiceConfig.Webhooks config;
+    private final ConcurrentMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+    
+    public EventBulkheads(ServiceConfig.Webhooks config)
+    {
+        this.config = config;
+    }
+    
+    public Bulkhead get(String event)
+    {
+        return bulkheads.computeIfAbsent(event, e -> 
+            new Bulkhead.Builder(e)
+                .withBulkhead(config.getBulkhead(e))
+                .build());
+    }
+    
+    /**
+     * The bulkheads for the kinds of event that have been seen so far.
+     */
+    public List<Bulkhead> getAll()
+    {
+        return new ArrayList<>(bulkheads.values());
+    }
+}
@@ -16,12 +16,10 @@
 
 package net.mostlyharmless.jghservice.resources;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.module.SimpleModule;
 import javax.ws.rs.ext.ContextResolver;
 import javax.ws.rs.ext.Provider;
-import net.mostlyharmless.jghservice.resources.jira.JiraEvent;
+import net.mostlyharmless.jghservice.connector.Codecs;
 
 /**
  *
@@ -30,21 +28,11 @@ import net.mostlyharmless.jghservice.resources.jira.JiraEvent;
 @Provider
 public class ObjectMapperProvider implements ContextResolver<ObjectMapper>
 {
-    private final ObjectMapper mapper;
-    
-    public ObjectMapperProvider()
-    {
-        mapper = new ObjectMapper();
-        SimpleModule module = new SimpleModule();
-        module.addDeserializer(JiraEvent.Issue.class, new JiraEvent.Issue.Deserializer());
-        mapper.registerModule(module);
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-    }
-    
     @Override
     public ObjectMapper getContext(Class<?> type)
     {
-        return mapper;
+        // Webhook payloads are bound with the same mapper the connectors use
+        return Codecs.mapper();
     }
     
 }
@@ -52,6 +52,12 @@ public class ServiceConfig
     @XmlElement(name="userMappings")
     @XmlJavaTypeAdapter(UserMappingAdapter.class)
     private Map<String, Map<String, String>> userMappings;
+    @XmlElement
+    private Webhooks webhooks = new Webhooks();
+    @XmlElement
+    private Warmup warmup = new Warmup();
+    @XmlElement
+    private Journal journal = new Journal();
     
     private List<String> jiraProjectNames;
     
@@ -64,6 +70,21 @@ public class ServiceConfig
     {
         return jira;
     }
+    
+    public Webhooks getWebhooks()
+    {
+        return webhooks;
+    }
+    
+    public Warmup getWarmup()
+    {
+        return warmup;
+    }
+    
+    public Journal getJournal()
+    {
+        return journal;
+    }
 
     public Repository getRepoForJiraName(String jiraName)
     {
@@ -114,12 +135,10 @@ public class ServiceConfig
         }
     }
     
-    public synchronized List<String> getProjectKeys()
+    public synchronized List<String> getProjectKeys(JiraConnector conn)
     {
         if (null == jiraProjectNames)
         {
-            JiraConnector conn = new JiraConnector(this);
-            
             GetProjectKeys get = new GetProjectKeys.Builder().build();
             try
             {
@@ -152,6 +171,20 @@ public class ServiceConfig
         private String epicLinkField;
         @XmlElement
         private String epicNameField;
+        @XmlElement
+        private BulkCreate bulkCreate = new BulkCreate();
+        @XmlElement
+        private Connection connection = new Connection();
+        @XmlElement
+        private Bulkhead bulkhead = new Bulkhead();
+        @XmlElement
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
+        @XmlElement
+        private Retry retry = new Retry();
+        @XmlElement
+        private Hedge hedge = new Hedge();
+        @XmlElement
+        private VersionDebounce versionDebounce = new VersionDebounce();
 
         public String getUsername()
         {
@@ -198,16 +231,68 @@ public class ServiceConfig
             return epicNameField != null;
         }
         
+        public BulkCreate getBulkCreate()
+        {
+            return bulkCreate;
+        }
+        
+        public Connection getConnection()
+        {
+            return connection;
+        }
+        
+        public Bulkhead getBulkhead()
+        {
+            return bulkhead;
+        }
+        
+        public CircuitBreaker getCircuitBreaker()
+        {
+            return circuitBreaker;
+        }
+        
+        public Retry getRetry()
+        {
+            return retry;
+        }
+        
+        public Hedge getHedge()
+        {
+            return hedge;
+        }
+        
+        public VersionDebounce getVersionDebounce()
+        {
+            return versionDebounce;
+        }
+        
     }
     
     public static class Github
     {
+        public static final long DEFAULT_RESPONSE_CACHE_SIZE = 4 * 1024 * 1024;
+        
         @XmlElement
         private String username;
         @XmlElement
         private String password;
         @XmlElement
         private String url;
+        @XmlElement
+        private Connection connection = new Connection();
+        @XmlElement
+        private Bulkhead bulkhead = new Bulkhead();
+        @XmlElement
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
+        @XmlElement
+        private Retry retry = new Retry();
+        // In bytes; 0 disables conditional requests
+        @XmlElement
+        private long responseCacheSize = DEFAULT_RESPONSE_CACHE_SIZE;
+        @XmlElement
+        private RateLimit rateLimit = new RateLimit();
+        @XmlElement
+        private WriteCoalesce writeCoalesce = new WriteCoalesce();
 
         public String getUsername()
         {
@@ -224,8 +309,537 @@ public class ServiceConfig
             return url;
         }
         
+        public Connection getConnection()
+        {
+            return connection;
+        }
         
+        public Bulkhead getBulkhead()
+        {
+            return bulkhead;
+        }
+        
+        public CircuitBreaker getCircuitBreaker()
+        {
+            return circuitBreaker;
+        }
+        
+        public Retry getRetry()
+        {
+            return retry;
+        }
+        
+        public long getResponseCacheSize()
+        {
+            return responseCacheSize;
+        }
         
+        public RateLimit getRateLimit()
+        {
+            return rateLimit;
+        }
+        
+        public WriteCoalesce getWriteCoalesce()
+        {
+            return writeCoalesce;
+        }
+        
+    }
+    
+    public static class RateLimit
+    {
+        // Times are in milliseconds
+        @XmlElement
+        private int paceBelow = 500;
+        @XmlElement
+        private long maxWait = 65 * 60 * 1000;
+        @XmlElement
+        private long initialBackoff = 60 * 1000;
+        @XmlElement
+        private long maxBackoff = 15 * 60 * 1000;
+
+        public int getPaceBelow()
+        {
+            return paceBelow;
+        }
+
+        public long getMaxWait()
+        {
+            return maxWait;
+        }
+
+        public long getInitialBackoff()
+        {
+            return initialBackoff;
+        }
+
+        public long getMaxBackoff()
+        {
+            return maxBackoff;
+        }
+    }
+    
+    public static class Webhooks
+    {
+        public static final long DEFAULT_DEADLINE = 60000;
+        public static final int DEFAULT_WORKERS = 
+            Math.max(4, Runtime.getRuntime().availableProcessors());
+        public static final int DEFAULT_QUEUE_SIZE = 1000;
+        
+        // In milliseconds
+        @XmlElement
+        private long deadline = DEFAULT_DEADLINE;
+        // Threads processing queued events, each taking the events for 
+        // its own share of the issues
+        @XmlElement
+        private int workers = DEFAULT_WORKERS;
+        // Events waiting to be processed before new ones are refused
+        @XmlElement
+        private int queueSize = DEFAULT_QUEUE_SIZE;
+        // Applies to each kind of event separately, unless overridden 
+        // below for that kind
+        @XmlElement
+        private Bulkhead bulkhead = new Bulkhead();
+        @XmlElementWrapper(name="eventBulkheads")
+        @XmlElement(name="event")
+        private List<EventBulkhead> eventBulkheads = new ArrayList<>();
+        @XmlElement
+        private Dedup dedup = new Dedup();
+
+        public long getDeadline()
+        {
+            return deadline;
+        }
+
+        public int getWorkers()
+        {
+            return workers;
+        }
+
+        public int getQueueSize()
+        {
+            return queueSize;
+        }
+
+        public Dedup getDedup()
+        {
+            return dedup;
+        }
+        
+        /**
+         * The bulkhead settings for one kind of event, e.g. 
+         * "github:created" or "jira:issue_updated".
+         */
+        public Bulkhead getBulkhead(String event)
+        {
+            for (EventBulkhead eventBulkhead : eventBulkheads)
+            {
+                if (eventBulkhead.getEvent().equals(event))
+                {
+                    return eventBulkhead;
+                }
+            }
+            return bulkhead;
+        }
+    }
+    
+    public static class Dedup
+    {
+        public static final long DEFAULT_WINDOW = 3600000;
+        public static final int DEFAULT_MAX_ENTRIES = 50000;
+        
+        // In milliseconds
+        @XmlElement
+        private long window = DEFAULT_WINDOW;
+        @XmlElement
+        private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+        public long getWindow()
+        {
+            return window;
+        }
+
+        public int getMaxEntries()
+        {
+            return maxEntries;
+        }
+    }
+    
+    public static class Bulkhead
+    {
+        public static final int DEFAULT_MAX_CONCURRENT = 16;
+        public static final long DEFAULT_MAX_WAIT = 1000;
+        
+        @XmlElement
+        private int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+        // In milliseconds
+        @XmlElement
+        private long maxWait = DEFAULT_MAX_WAIT;
+
+        public int getMaxConcurrent()
+        {
+            return maxConcurrent;
+        }
+
+        public long getMaxWait()
+        {
+            return maxWait;
+        }
+    }
+    
+    public static class EventBulkhead extends Bulkhead
+    {
+        @XmlAttribute(name="name")
+        private String event;
+
+        public String getEvent()
+        {
+            return event;
+        }
+    }
+    
+    public static class Warmup
+    {
+        public static final long DEFAULT_TIMEOUT = 60000;
+        
+        @XmlElement
+        private boolean enabled = true;
+        // In milliseconds
+        @XmlElement
+        private long timeout = DEFAULT_TIMEOUT;
+
+        public boolean isEnabled()
+        {
+            return enabled;
+        }
+
+        public long getTimeout()
+        {
+            return timeout;
+        }
+    }
+    
+    public static class Journal
+    {
+        public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+        public static final long DEFAULT_SYNC_INTERVAL = 0;
+        
+        // No journal is kept unless this is set
+        @XmlElement
+        private String directory;
+        // In bytes
+        @XmlElement
+        private int segmentSize = DEFAULT_SEGMENT_SIZE;
+        // In milliseconds
+        @XmlElement
+        private long syncInterval = DEFAULT_SYNC_INTERVAL;
+
+        public String getDirectory()
+        {
+            return directory;
+        }
+
+        public int getSegmentSize()
+        {
+            return segmentSize;
+        }
+
+        public long getSyncInterval()
+        {
+            return syncInterval;
+        }
+    }
+    
+    public static class Connection
+    {
+        public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+        public static final int DEFAULT_READ_TIMEOUT = 30000;
+        public static final int DEFAULT_MAX_CONNECTIONS = 8;
+        public static final int DEFAULT_ASYNC_THREADS = 8;
+        public static final int DEFAULT_ASYNC_QUEUE_SIZE = 256;
+        public static final String DEFAULT_PROTOCOL = "http/1.1";
+        public static final int DEFAULT_MAX_STREAMS = 64;
+        
+        // Timeouts are in milliseconds
+        @XmlElement
+        private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        @XmlElement
+        private int readTimeout = DEFAULT_READ_TIMEOUT;
+        @XmlElement
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+        @XmlElement
+        private int asyncThreads = DEFAULT_ASYNC_THREADS;
+        @XmlElement
+        private int asyncQueueSize = DEFAULT_ASYNC_QUEUE_SIZE;
+        // "http/1.1" or "h2"
+        @XmlElement
+        private String protocol = DEFAULT_PROTOCOL;
+        @XmlElement
+        private int maxStreams = DEFAULT_MAX_STREAMS;
+
+        public int getConnectTimeout()
+        {
+            return connectTimeout;
+        }
+
+        public int getReadTimeout()
+        {
+            return readTimeout;
+        }
+
+        public int getMaxConnections()
+        {
+            return maxConnections;
+        }
+        
+        public int getAsyncThreads()
+        {
+            return asyncThreads;
+        }
+        
+        public int getAsyncQueueSize()
+        {
+            return asyncQueueSize;
+        }
+        
+        public String getProtocol()
+        {
+            return protocol;
+        }
+        
+        public int getMaxStreams()
+        {
+            return maxStreams;
+        }
+        
+    }
+    
+    public static class BulkCreate
+    {
+        @XmlElement
+        private int maxBatchSize = 50;
+        // In milliseconds
+        @XmlElement
+        private long linger = 50;
+
+        public int getMaxBatchSize()
+        {
+            return maxBatchSize;
+        }
+
+        public long getLinger()
+        {
+            return linger;
+        }
+    }
+    
+    public static class WriteCoalesce
+    {
+        // In milliseconds; 0 turns coalescing off
+        @XmlElement
+        private long window = 50;
+
+        public long getWindow()
+        {
+            return window;
+        }
+    }
+    
+    public static class VersionDebounce
+    {
+        // In milliseconds; 0 turns debouncing off
+        @XmlElement
+        private long window = 1000;
+        // In milliseconds
+        @XmlElement
+        private long maxDelay = 5000;
+
+        public long getWindow()
+        {
+            return window;
+        }
+
+        public long getMaxDelay()
+        {
+            return maxDelay;
+        }
+    }
+    
+    public static class Hedge
+    {
+        public static final int DEFAULT_PERCENTILE = 95;
+        public static final int DEFAULT_WINDOW_SIZE = 200;
+        public static final int DEFAULT_MIN_SAMPLES = 50;
+        public static final long DEFAULT_MIN_DELAY = 100;
+        public static final double DEFAULT_BUDGET_RATIO = 0.05;
+        public static final double DEFAULT_BUDGET_MAX = 10;
+        public static final int DEFAULT_MAX_THREADS = 32;
+        
+        @XmlElement
+        private boolean enabled = true;
+        @XmlElement
+        private int percentile = DEFAULT_PERCENTILE;
+        @XmlElement
+        private int windowSize = DEFAULT_WINDOW_SIZE;
+        @XmlElement
+        private int minSamples = DEFAULT_MIN_SAMPLES;
+        // In milliseconds
+        @XmlElement
+        private long minDelay = DEFAULT_MIN_DELAY;
+        @XmlElement
+        private double budgetRatio = DEFAULT_BUDGET_RATIO;
+        @XmlElement
+        private double budgetMax = DEFAULT_BUDGET_MAX;
+        @XmlElement
+        private int maxThreads = DEFAULT_MAX_THREADS;
+
+        public boolean isEnabled()
+        {
+            return enabled;
+        }
+
+        public int getPercentile()
+        {
+            return percentile;
+        }
+
+        public int getWindowSize()
+        {
+            return windowSize;
+        }
+
+        public int getMinSamples()
+        {
+            return minSamples;
+        }
+
+        public long getMinDelay()
+        {
+            return minDelay;
+        }
+
+        public double getBudgetRatio()
+        {
+            return budgetRatio;
+        }
+
+        public double getBudgetMax()
+        {
+            return budgetMax;
+        }
+
+        public int getMaxThreads()
+        {
+            return maxThreads;
+        }
+    }
+    
+    public static class Retry
+    {
+        public static final int DEFAULT_MAX_ATTEMPTS = 3;
+        public static final long DEFAULT_BASE_DELAY = 200;
+        public static final long DEFAULT_MAX_DELAY = 5000;
+        public static final double DEFAULT_BUDGET_RATIO = 0.1;
+        public static final double DEFAULT_BUDGET_MAX = 20;
+        
+        // Delays are in milliseconds
+        @XmlElement
+        private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        @XmlElement
+        private long baseDelay = DEFAULT_BASE_DELAY;
+        @XmlElement
+        private long maxDelay = DEFAULT_MAX_DELAY;
+        @XmlElement
+        private double budgetRatio = DEFAULT_BUDGET_RATIO;
+        @XmlElement
+        private double budgetMax = DEFAULT_BUDGET_MAX;
+
+        public int getMaxAttempts()
+        {
+            return maxAttempts;
+        }
+
+        public long getBaseDelay()
+        {
+            return baseDelay;
+        }
+
+        public long getMaxDelay()
+        {
+            return maxDelay;
+        }
+
+        public double getBudgetRatio()
+        {
+            return budgetRatio;
+        }
+
+        public double getBudgetMax()
+        {
+            return budgetMax;
+        }
+    }
+    
+    public static class CircuitBreaker
+    {
+        public static final int DEFAULT_WINDOW_SIZE = 50;
+        public static final int DEFAULT_MINIMUM_CALLS = 10;
+        public static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+        public static final long DEFAULT_SLOW_CALL_DURATION = 10000;
+        public static final int DEFAULT_SLOW_CALL_RATE_THRESHOLD = 80;
+        public static final long DEFAULT_OPEN_DURATION = 30000;
+        public static final int DEFAULT_HALF_OPEN_CALLS = 3;
+        
+        // Rates are percentages, durations in milliseconds
+        @XmlElement
+        private int windowSize = DEFAULT_WINDOW_SIZE;
+        @XmlElement
+        private int minimumCalls = DEFAULT_MINIMUM_CALLS;
+        @XmlElement
+        private int failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+        @XmlElement
+        private long slowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+        @XmlElement
+        private int slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+        @XmlElement
+        private long openDuration = DEFAULT_OPEN_DURATION;
+        @XmlElement
+        private int halfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+
+        public int getWindowSize()
+        {
+            return windowSize;
+        }
+
+        public int getMinimumCalls()
+        {
+            return minimumCalls;
+        }
+
+        public int getFailureRateThreshold()
+        {
+            return failureRateThreshold;
+        }
+
+        public long getSlowCallDuration()
+        {
+            return slowCallDuration;
+        }
+
+        public int getSlowCallRateThreshold()
+        {
+            return slowCallRateThreshold;
+        }
+
+        public long getOpenDuration()
+        {
+            return openDuration;
+        }
+
+        public int getHalfOpenCalls()
+        {
+            return halfOpenCalls;
+        }
     }
     
     public static class UserMappings
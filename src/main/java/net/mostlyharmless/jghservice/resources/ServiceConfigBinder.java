@@ -16,8 +16,9 @@
 
 package net.mostlyharmless.jghservice.resources;
 
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.naming.InitialContext;
@@ -25,6 +26,19 @@ import javax.naming.NamingException;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
+import net.mostlyharmless.jghservice.connector.BoundedExecutor;
+import net.mostlyharmless.jghservice.connector.Bulkhead;
+import net.mostlyharmless.jghservice.connector.CircuitBreaker;
+import net.mostlyharmless.jghservice.connector.Hedger;
+import net.mostlyharmless.jghservice.connector.HttpTransport;
+import net.mostlyharmless.jghservice.connector.RetryPolicy;
+import net.mostlyharmless.jghservice.connector.github.GithubConnector;
+import net.mostlyharmless.jghservice.connector.github.IssueWriteCoalescer;
+import net.mostlyharmless.jghservice.connector.github.RateLimitGovernor;
+import net.mostlyharmless.jghservice.connector.github.ResponseCache;
+import net.mostlyharmless.jghservice.connector.jira.IssueCreateBatcher;
+import net.mostlyharmless.jghservice.connector.jira.JiraConnector;
+import net.mostlyharmless.jghservice.connector.jira.VersionUpdateDebouncer;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
 /**
@@ -44,12 +58,126 @@ public class ServiceConfigBinder extends AbstractBinder
             FileReader reader = new FileReader(configFile);
             ServiceConfig c = (ServiceConfig) jaxbUnmarshaller.unmarshal(reader);
             bind(c).to(ServiceConfig.class);
+            
+            // One transport (and connection pool) per upstream host, shared
+            // by every request.
+            HttpTransport jiraTransport =
+                new HttpTransport.Builder()
+                    .withApiUrlBase(c.getJira().getUrl())
+                    .withCredentials(c.getJira().getUsername(), c.getJira().getPassword())
+                    .withConnection(c.getJira().getConnection())
+                    .build();
+            
+            HttpTransport githubTransport =
+                new HttpTransport.Builder()
+                    .withApiUrlBase(c.getGithub().getUrl())
+                    .withCredentials(c.getGithub().getUsername(), c.getGithub().getPassword())
+                    .withUserAgent(c.getGithub().getUsername())
+                    .withConnection(c.getGithub().getConnection())
+                    .build();
+            
+            BoundedExecutor jiraExecutor = 
+                new BoundedExecutor("jira-async", 
+                                    c.getJira().getConnection().getAsyncThreads(),
+                                    c.getJira().getConnection().getAsyncQueueSize());
+            
+            BoundedExecutor githubExecutor = 
+                new BoundedExecutor("github-async", 
+                                    c.getGithub().getConnection().getAsyncThreads(),
+                                    c.getGithub().getConnection().getAsyncQueueSize());
+            
+            ResponseCache githubCache = 
+                new ResponseCache(c.getGithub().getResponseCacheSize());
+            
+            ServiceConfig.RateLimit rateLimit = c.getGithub().getRateLimit();
+            RateLimitGovernor githubGovernor = 
+                new RateLimitGovernor(rateLimit.getPaceBelow(), 
+                                      rateLimit.getMaxWait(), 
+                                      rateLimit.getInitialBackoff(), 
+                                      rateLimit.getMaxBackoff());
+            
+            // Each upstream gets its own retry budget so one that's failing
+            // can't use up the other's.
+            RetryPolicy jiraRetry = 
+                new RetryPolicy.Builder()
+                    .withRetry(c.getJira().getRetry())
+                    .build();
+            
+            RetryPolicy githubRetry = 
+                new RetryPolicy.Builder()
+                    .withRetry(c.getGithub().getRetry())
+                    .build();
+            
+            CircuitBreaker jiraBreaker = 
+                new CircuitBreaker.Builder(jiraTransport.getApiUrlBase())
+                    .withCircuitBreaker(c.getJira().getCircuitBreaker())
+                    .build();
+            
+            CircuitBreaker githubBreaker = 
+                new CircuitBreaker.Builder(githubTransport.getApiUrlBase())
+                    .withCircuitBreaker(c.getGithub().getCircuitBreaker())
+                    .build();
+            
+            // Separate bulkheads so a slow upstream only ties up the 
+            // threads waiting on it.
+            Bulkhead jiraBulkhead = 
+                new Bulkhead.Builder("jira")
+                    .withBulkhead(c.getJira().getBulkhead())
+                    .build();
+            
+            Bulkhead githubBulkhead = 
+                new Bulkhead.Builder("github")
+                    .withBulkhead(c.getGithub().getBulkhead())
+                    .build();
+            
+            Hedger jiraHedger = 
+                new Hedger.Builder("jira")
+                    .withHedge(c.getJira().getHedge())
+                    .build();
+            
+            JiraConnector jiraConnector = 
+                new JiraConnector(jiraTransport, jiraExecutor, jiraRetry, 
+                                  jiraBreaker, jiraBulkhead, jiraHedger);
+            
+            bind(jiraConnector).to(JiraConnector.class);
+            bind(new IssueCreateBatcher(jiraConnector, 
+                                        c.getJira().getBulkCreate().getMaxBatchSize(),
+                                        c.getJira().getBulkCreate().getLinger()))
+                .to(IssueCreateBatcher.class);
+            bind(new VersionUpdateDebouncer(jiraConnector, 
+                                            c.getJira().getVersionDebounce().getWindow(),
+                                            c.getJira().getVersionDebounce().getMaxDelay()))
+                .to(VersionUpdateDebouncer.class);
+            GithubConnector githubConnector = 
+                new GithubConnector(githubTransport, githubExecutor, 
+                                    githubRetry, githubBreaker, githubBulkhead,
+                                    githubCache, githubGovernor);
+            
+            bind(githubConnector).to(GithubConnector.class);
+            bind(new IssueWriteCoalescer(githubConnector, 
+                                         c.getGithub().getWriteCoalesce().getWindow()))
+                .to(IssueWriteCoalescer.class);
+            bind(new Warmup(c, jiraConnector, githubConnector)).to(Warmup.class);
+            bind(new EventBulkheads(c.getWebhooks())).to(EventBulkheads.class);
+            bind(new WebhookQueue(c.getWebhooks().getWorkers(), 
+                                  c.getWebhooks().getQueueSize())).to(WebhookQueue.class);
+            ServiceConfig.Dedup dedup = c.getWebhooks().getDedup();
+            bind(new WebhookDeduplicator(dedup.getWindow(), dedup.getMaxEntries()))
+                .to(WebhookDeduplicator.class);
+            
+            ServiceConfig.Journal journal = c.getJournal();
+            bind(journal.getDirectory() == null
+                    ? new WebhookJournal()
+                    : new WebhookJournal(new File(journal.getDirectory()), 
+                                         journal.getSegmentSize(), 
+                                         journal.getSyncInterval()))
+                .to(WebhookJournal.class);
         }
         catch (NamingException ex)
         {
             Logger.getLogger(ServiceConfig.class.getName()).log(Level.SEVERE, null, ex);
         }
-        catch (JAXBException | FileNotFoundException ex)
+        catch (JAXBException | IOException ex)
         {
             Logger.getLogger(ServiceConfigBinder.class.getName()).log(Level.SEVERE, null, ex);
         }
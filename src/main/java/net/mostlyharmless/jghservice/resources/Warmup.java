@@ -0,0 +1,269 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.resources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.mostlyharmless.jghservice.connector.Deadline;
+import net.mostlyharmless.jghservice.connector.github.GetMilestones;
+import net.mostlyharmless.jghservice.connector.github.GithubConnector;
+import net.mostlyharmless.jghservice.connector.github.PagedIterator;
+import net.mostlyharmless.jghservice.connector.jira.GetProjectVersions;
+import net.mostlyharmless.jghservice.connector.jira.JiraConnector;
+import net.mostlyharmless.jghservice.resources.ServiceConfig.Repository;
+import net.mostlyharmless.jghservice.resources.github.GithubEvent.Milestone;
+
+/**
+ * Gets the service ready to take webhooks before it says it is.
+ * 
+ * Left to the first webhook after a deploy, DNS lookups, TLS handshakes 
+ * and the JIRA project keys lookup all happen inside the request. Warmup 
+ * does them up front: the project keys are loaded, and the milestones and 
+ * project versions of every configured repository are fetched in parallel,
+ * which opens pooled connections to both hosts along the way. Milestone 
+ * pages end up in the Github response cache so later lookups only need to
+ * revalidate them.
+ * 
+ * A step that fails is logged and recorded but doesn't stop warmup; the 
+ * service is ready once every step has finished or the timeout is up.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class Warmup
+{
+    private static final Logger LOGGER = Logger.getLogger(Warmup.class.getName());
+    
+    private final ServiceConfig config;
+    private final JiraConnector jiraConnector;
+    private final GithubConnector githubConnector;
+    private final boolean enabled;
+    private final long timeout;
+    
+    private final Map<String, Long> timings = 
+        Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+    private final Map<String, String> failures = 
+        Collections.synchronizedMap(new LinkedHashMap<String, String>());
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile boolean ready;
+    
+    public Warmup(ServiceConfig config, JiraConnector jiraConnector, 
+                  GithubConnector githubConnector)
+    {
+        this.config = config;
+        this.jiraConnector = jiraConnector;
+        this.githubConnector = githubConnector;
+        this.enabled = config.getWarmup().isEnabled();
+        this.timeout = config.getWarmup().getTimeout();
+    }
+    
+    /**
+     * Runs warmup in the background; {@link #isReady()} turns true when 
+     * it's done.
+     */
+    public synchronized void start()
+    {
+        if (startedAt != 0)
+        {
+            return;
+        }
+        startedAt = System.currentTimeMillis();
+        if (!enabled)
+        {
+            finish();
+            return;
+        }
+        
+        Thread thread = new Thread(this::run, "warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    public boolean isReady()
+    {
+        return ready;
+    }
+    
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+    
+    /**
+     * How long warmup took, or has taken so far.
+     */
+    public long getElapsed()
+    {
+        if (startedAt == 0)
+        {
+            return 0;
+        }
+        return (ready ? finishedAt : System.currentTimeMillis()) - startedAt;
+    }
+    
+    /**
+     * Milliseconds taken by each step that has finished, in the order 
+     * they finished.
+     */
+    public Map<String, Long> getTimings()
+    {
+        synchronized (timings)
+        {
+            return new LinkedHashMap<>(timings);
+        }
+    }
+    
+    /**
+     * Steps that failed (or didn't finish in time) and why.
+     */
+    public Map<String, String> getFailures()
+    {
+        synchronized (failures)
+        {
+            return new LinkedHashMap<>(failures);
+        }
+    }
+    
+    private void run()
+    {
+        Deadline deadline = Deadline.after(timeout);
+        List<Repository> repos = config.getRepositories();
+        List<CompletableFuture<?>> steps = new ArrayList<>();
+        
+        // Milestone listing is paged and so run on threads of our own, as 
+        // many as the Github transport will have connections for.
+        int threads = Math.max(1, Math.min(repos.size(), 
+            githubConnector.getTransport().getMaxConnections()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> 
+        {
+            Thread t = new Thread(r, "warmup-github");
+            t.setDaemon(true);
+            return t;
+        });
+        
+        try
+        {
+            for (Repository repo : repos)
+            {
+                final long start = System.currentTimeMillis();
+                GetProjectVersions getVersions = 
+                    new GetProjectVersions.Builder(repo.getJiraProjectKey()).build();
+                steps.add(timed("jira.versions." + repo.getJiraProjectKey(), start,
+                                jiraConnector.executeAsync(getVersions, deadline)));
+                
+                steps.add(timed("github.milestones." + repo.getGithubOwner() + "/" + repo.getGithubName(),
+                                start, CompletableFuture.supplyAsync(() -> 
+                                    loadMilestones(repo, deadline), pool)));
+            }
+            
+            // This one blocks (and holds the config's lock) so it's done 
+            // here while the rest are in flight.
+            long start = System.currentTimeMillis();
+            if (config.getProjectKeys(jiraConnector) != null)
+            {
+                timings.put("jira.projectKeys", System.currentTimeMillis() - start);
+            }
+            else
+            {
+                failures.put("jira.projectKeys", "Project keys could not be loaded");
+            }
+            
+            CompletableFuture.allOf(steps.toArray(new CompletableFuture<?>[steps.size()]))
+                .get(Math.max(0, deadline.remaining()), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex)
+        {
+            failures.put("timeout", "Warmup didn't finish within " + timeout + "ms");
+        }
+        catch (ExecutionException ex)
+        {
+            // Already recorded by the step that failed
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            pool.shutdownNow();
+            finish();
+        }
+    }
+    
+    private int loadMilestones(Repository repo, Deadline deadline)
+    {
+        GetMilestones get = 
+            new GetMilestones.Builder()
+                .withRepositoy(repo)
+                .build();
+        
+        int count = 0;
+        try (PagedIterator<Milestone> milestones = githubConnector.iterate(get, deadline, false))
+        {
+            while (milestones.hasNext())
+            {
+                milestones.next();
+                count++;
+            }
+        }
+        catch (ExecutionException ex)
+        {
+            throw new IllegalStateException(ex.getCause());
+        }
+        return count;
+    }
+    
+    private <T> CompletableFuture<T> timed(final String step, final long start, 
+                                           CompletableFuture<T> future)
+    {
+        return future.whenComplete((result, ex) -> 
+        {
+            if (ex == null)
+            {
+                timings.put(step, System.currentTimeMillis() - start);
+            }
+            else
+            {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                failures.put(step, String.valueOf(cause));
+                LOGGER.log(Level.WARNING, "Warmup step " + step + " failed", cause);
+            }
+        });
+    }
+    
+    private void finish()
+    {
+        finishedAt = System.currentTimeMillis();
+        ready = true;
+        if (enabled)
+        {
+            LOGGER.log(Level.INFO, "Warmup finished in {0}ms; steps: {1}; failures: {2}", 
+                       new Object[] { finishedAt - startedAt, getTimings(), getFailures() });
+        }
+    }
+}
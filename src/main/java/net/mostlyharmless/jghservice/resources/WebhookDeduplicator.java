@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.resources;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recognizes webhook deliveries we've already accepted.
+ * 
+ * Github redelivers an event when we're slow to answer, and JIRA 
+ * sometimes fires the same jira:issue_updated twice; processed again, 
+ * either would post the same comment or external link a second time. 
+ * Each delivery has a key (Github's X-GitHub-Delivery, or JIRA's 
+ * timestamp plus the changelog or comment id) and a key seen within the 
+ * window is a duplicate.
+ * 
+ * Keys are kept in arrival order and dropped once they're older than the
+ * window; if more than maxEntries arrive within it the oldest go early, 
+ * so memory stays bounded whatever the event rate.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class WebhookDeduplicator
+{
+    private final long window;
+    private final int maxEntries;
+    
+    // Guarded by this; key to when it was first seen, oldest first
+    private final LinkedHashMap<String, Long> seen = new LinkedHashMap<>();
+    
+    private long checked;
+    private long duplicates;
+    private long evicted;
+    
+    /**
+     * @param window milliseconds a key is remembered for
+     * @param maxEntries most keys remembered at once
+     */
+    public WebhookDeduplicator(long window, int maxEntries)
+    {
+        this.window = window;
+        this.maxEntries = maxEntries;
+    }
+    
+    /**
+     * Records the key, unless it's already been seen.
+     * 
+     * @return true if the key is new (or null), false for a duplicate
+     */
+    public synchronized boolean firstSeen(String key)
+    {
+        if (key == null)
+        {
+            return true;
+        }
+        
+        long now = System.currentTimeMillis();
+        expire(now);
+        checked++;
+        
+        if (seen.containsKey(key))
+        {
+            duplicates++;
+            return false;
+        }
+        
+        seen.put(key, now);
+        if (seen.size() > maxEntries)
+        {
+            Iterator<String> oldest = seen.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+            evicted++;
+        }
+        return true;
+    }
+    
+    /**
+     * Forgets a key, e.g. because its delivery was refused and the sender
+     * will try again.
+     */
+    public synchronized void forget(String key)
+    {
+        if (key != null)
+        {
+            seen.remove(key);
+        }
+    }
+    
+    private void expire(long now)
+    {
+        Iterator<Map.Entry<String, Long>> it = seen.entrySet().iterator();
+        while (it.hasNext() && it.next().getValue() <= now - window)
+        {
+            it.remove();
+        }
+    }
+    
+    public synchronized int getSize()
+    {
+        return seen.size();
+    }
+
+    public synchronized long getChecked()
+    {
+        return checked;
+    }
+
+    public synchronized long getDuplicates()
+    {
+        return duplicates;
+    }
+    
+    /**
+     * Keys dropped before their window was up to stay within maxEntries.
+     */
+    public synchronized long getEvicted()
+    {
+        return evicted;
+    }
+}
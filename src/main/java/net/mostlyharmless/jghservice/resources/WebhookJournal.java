@@ -0,0 +1,777 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the webhook payloads we've accepted.
+ * 
+ * Once a webhook has answered 202 the event only exists in the 
+ * {@link WebhookQueue}, and a restart would lose it. Each payload is 
+ * appended here first, and the 202 only goes out once it's on disk. When 
+ * the event has been processed its entry is marked done; whatever isn't 
+ * done when the service stops is replayed when it starts again.
+ * 
+ * The journal is a directory of fixed size, memory-mapped segment files, 
+ * each named for the sequence number of its first entry. An entry is:
+ * 
+ * <pre>
+ * int    length of source + payload
+ * int    CRC32 of everything but length and status
+ * long   sequence number
+ * byte   status (pending, done)
+ * byte   length of source
+ * byte[] source ("github", "jira")
+ * byte[] payload
+ * </pre>
+ * 
+ * A zero length marks the end of a segment. Appends are made durable in 
+ * batches: one thread forces the mapped segments to disk while appends 
+ * that arrive meanwhile wait for the next force, so a burst of events 
+ * costs a few syncs rather than one each. Marking an entry done goes out 
+ * with the next batch but nothing waits for it; if that's lost the event
+ * is replayed. When a segment is full a 
+ * new one is started, and a full segment is deleted as soon as every 
+ * entry in it is done.
+ * 
+ * On startup the segments are read back and every entry whose CRC checks 
+ * out and that isn't done is kept for {@link #replay}. Reading a segment 
+ * stops at the first entry that doesn't check out, which is where a 
+ * crash cut it short.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class WebhookJournal
+{
+    public static final String GITHUB = "github";
+    public static final String JIRA = "jira";
+    
+    private static final Logger LOGGER = Logger.getLogger(WebhookJournal.class.getName());
+    
+    private static final byte PENDING = 0;
+    private static final byte DONE = 1;
+    
+    private static final int CRC_OFFSET = 4;
+    private static final int SEQ_OFFSET = 8;
+    private static final int STATUS_OFFSET = 16;
+    private static final int SOURCE_OFFSET = 17;
+    private static final int HEADER = 18;
+    
+    private static final String SUFFIX = ".journal";
+    // How long (ms) to wait before offering a replayed entry again
+    private static final long REPLAY_RETRY = 100;
+    
+    private final File directory;
+    private final int segmentSize;
+    private final long syncInterval;
+    
+    // Guarded by this
+    private Segment active;
+    private long nextSeq = 1;
+    // Also read without the lock by complete()
+    private volatile boolean closed;
+    
+    // Entries yet to be handed to the replayer, oldest first, and the 
+    // state of handing them over; guarded by backlog
+    private final Deque<Entry> backlog = new ArrayDeque<>();
+    private Replayer replayer;
+    private boolean draining;
+    
+    // Guarded by syncLock
+    private final Object syncLock = new Object();
+    private final Set<Segment> dirty = new LinkedHashSet<>();
+    private long written;
+    private long synced;
+    private boolean stopped;
+    
+    private final Set<Segment> segments = ConcurrentHashMap.newKeySet();
+    private final Thread syncer;
+    
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong appendedBytes = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong syncMillis = new AtomicLong();
+    
+    /**
+     * A journal that isn't kept; {@link #append} returns null and nothing
+     * is ever replayed.
+     */
+    public WebhookJournal()
+    {
+        this.directory = null;
+        this.segmentSize = 0;
+        this.syncInterval = 0;
+        this.syncer = null;
+    }
+    
+    /**
+     * Opens (or creates) the journal in the directory and reads back 
+     * what's there.
+     * 
+     * @param directory where the segment files go
+     * @param segmentSize size in bytes of each segment file
+     * @param syncInterval milliseconds to wait before each sync for more 
+     * appends to join it; 0 syncs as soon as there's anything to sync 
+     */
+    public WebhookJournal(File directory, int segmentSize, long syncInterval) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Can't create journal directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncInterval = syncInterval;
+        
+        recover();
+        written = synced = nextSeq - 1;
+        
+        syncer = new Thread(this::sync, "journal-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+    
+    public boolean isEnabled()
+    {
+        return directory != null;
+    }
+    
+    private void recover() throws IOException
+    {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        Arrays.sort(files);
+        for (File file : files)
+        {
+            Segment segment = new Segment(file, map(file, file.length()));
+            segments.add(segment);
+            int position = 0;
+            while (position + HEADER <= segment.buffer.capacity())
+            {
+                Entry entry = read(segment, position);
+                if (entry == null)
+                {
+                    break;
+                }
+                if (segment.buffer.get(position + STATUS_OFFSET) == PENDING)
+                {
+                    backlog.add(entry);
+                    segment.pending.incrementAndGet();
+                    pending.incrementAndGet();
+                }
+                nextSeq = Math.max(nextSeq, entry.seq + 1);
+                position += HEADER + segment.buffer.getInt(position);
+            }
+            seal(segment);
+        }
+        
+        if (!backlog.isEmpty())
+        {
+            LOGGER.log(Level.INFO, "{0} unfinished webhook events found in the journal", 
+                       backlog.size());
+        }
+    }
+    
+    /**
+     * Reads back the entry at the position, or returns null if there's 
+     * no (intact) entry there.
+     */
+    private Entry read(Segment segment, int position)
+    {
+        ByteBuffer buffer = segment.buffer;
+        int length = buffer.getInt(position);
+        if (length <= 0 || length > buffer.capacity() - position - HEADER)
+        {
+            return null;
+        }
+        int sourceLength = buffer.get(position + SOURCE_OFFSET) & 0xff;
+        if (sourceLength > length)
+        {
+            return null;
+        }
+        
+        long seq = buffer.getLong(position + SEQ_OFFSET);
+        byte[] source = new byte[sourceLength];
+        byte[] payload = new byte[length - sourceLength];
+        ByteBuffer entry = buffer.duplicate();
+        entry.position(position + HEADER);
+        entry.get(source);
+        entry.get(payload);
+        
+        if (crc(seq, source, payload) != buffer.getInt(position + CRC_OFFSET))
+        {
+            LOGGER.log(Level.WARNING, "Journal segment {0} is cut short at offset {1}", 
+                       new Object[] { segment.file.getName(), position });
+            return null;
+        }
+        
+        return new Entry(seq, new String(source, StandardCharsets.UTF_8), payload, 
+                         segment, position);
+    }
+    
+    private static int crc(long seq, byte[] source, byte[] payload)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(9).putLong(seq).put((byte) source.length).array());
+        crc.update(source);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+    
+    private static MappedByteBuffer map(File file, long size) throws IOException
+    {
+        // The mapping stays valid once the file is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+        {
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+    
+    /**
+     * Appends the payload and waits for it to be on disk.
+     * 
+     * @param source {@link #GITHUB} or {@link #JIRA}
+     * @return the entry, to be handed to {@link #complete} once the event
+     * has been processed; null if the journal isn't kept
+     * @throws IOException if the journal is closed or can't be written
+     */
+    public Entry append(String source, byte[] payload) throws IOException
+    {
+        if (!isEnabled())
+        {
+            return null;
+        }
+        
+        byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+        int length = sourceBytes.length + payload.length;
+        Entry entry;
+        synchronized (this)
+        {
+            if (closed)
+            {
+                throw new IOException("The webhook journal is closed");
+            }
+            if (active == null || active.position + HEADER + length > active.buffer.capacity())
+            {
+                roll(HEADER + length);
+            }
+            
+            long seq = nextSeq++;
+            int position = active.position;
+            ByteBuffer buffer = active.buffer.duplicate();
+            buffer.position(position + CRC_OFFSET);
+            buffer.putInt(crc(seq, sourceBytes, payload));
+            buffer.putLong(seq);
+            buffer.put(PENDING);
+            buffer.put((byte) sourceBytes.length);
+            buffer.put(sourceBytes);
+            buffer.put(payload);
+            // Written last so a reader never sees a length without an entry
+            active.buffer.putInt(position, length);
+            active.position += HEADER + length;
+            active.pending.incrementAndGet();
+            pending.incrementAndGet();
+            
+            entry = new Entry(seq, source, null, active, position);
+            synchronized (syncLock)
+            {
+                written = seq;
+                dirty.add(active);
+                syncLock.notifyAll();
+            }
+        }
+        
+        awaitSync(entry.seq);
+        appended.incrementAndGet();
+        appendedBytes.addAndGet(HEADER + length);
+        return entry;
+    }
+    
+    private void roll(int needed) throws IOException
+    {
+        if (active != null)
+        {
+            seal(active);
+        }
+        File file = new File(directory, String.format("%020d", nextSeq) + SUFFIX);
+        active = new Segment(file, map(file, Math.max(segmentSize, needed)));
+        segments.add(active);
+    }
+    
+    private void awaitSync(long seq) throws IOException
+    {
+        synchronized (syncLock)
+        {
+            try
+            {
+                while (synced < seq)
+                {
+                    syncLock.wait();
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the journal to sync");
+            }
+        }
+    }
+    
+    /**
+     * Forces appended entries to disk, a batch at a time, and lets their 
+     * appenders know.
+     */
+    private void sync()
+    {
+        while (true)
+        {
+            long target;
+            List<Segment> toSync;
+            try
+            {
+                synchronized (syncLock)
+                {
+                    while (written == synced && dirty.isEmpty() && !stopped)
+                    {
+                        syncLock.wait();
+                    }
+                    if (written == synced && dirty.isEmpty())
+                    {
+                        return;
+                    }
+                }
+                if (syncInterval > 0)
+                {
+                    Thread.sleep(syncInterval);
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                return;
+            }
+            
+            synchronized (syncLock)
+            {
+                target = written;
+                toSync = new ArrayList<>(dirty);
+                dirty.clear();
+            }
+            
+            long start = System.nanoTime();
+            for (Segment segment : toSync)
+            {
+                try
+                {
+                    segment.buffer.force();
+                }
+                catch (RuntimeException ex)
+                {
+                    // The entries are still in the page cache; there's 
+                    // nothing better to do than carry on
+                    LOGGER.log(Level.SEVERE, "Syncing journal segment " + segment.file.getName() 
+                               + " failed", ex);
+                }
+            }
+            syncs.incrementAndGet();
+            syncMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            
+            synchronized (syncLock)
+            {
+                synced = target;
+                syncLock.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Marks the entry's event as processed. Safe to call more than once, 
+     * and with null. Ignored once the journal is shut down: whatever 
+     * finishes then (or fails because the connectors have stopped) is 
+     * left to be replayed.
+     */
+    public void complete(Entry entry)
+    {
+        if (entry == null || closed || !entry.done.compareAndSet(false, true))
+        {
+            return;
+        }
+        entry.segment.buffer.put(entry.position + STATUS_OFFSET, DONE);
+        completed.incrementAndGet();
+        pending.decrementAndGet();
+        if (entry.segment.pending.decrementAndGet() == 0 && entry.segment.sealed)
+        {
+            delete(entry.segment);
+            return;
+        }
+        // The status byte goes out with the next sync
+        synchronized (syncLock)
+        {
+            if (dirty.add(entry.segment))
+            {
+                syncLock.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * No more entries go in the segment; it can be deleted once they're 
+     * all done.
+     */
+    private void seal(Segment segment)
+    {
+        segment.sealed = true;
+        if (segment.pending.get() == 0)
+        {
+            delete(segment);
+        }
+    }
+    
+    private void delete(Segment segment)
+    {
+        if (!segment.deleted.compareAndSet(false, true))
+        {
+            return;
+        }
+        segments.remove(segment);
+        // The mapping itself goes when the buffer is collected
+        if (!segment.file.delete())
+        {
+            LOGGER.log(Level.WARNING, "Couldn't delete journal segment {0}", segment.file);
+        }
+    }
+    
+    /**
+     * Hands every entry found unfinished at startup to the replayer, in 
+     * the order they were appended, on a background thread. The replayer 
+     * is responsible for completing each entry once its event has been 
+     * processed; one it can't take yet (e.g. its queue is full) is offered
+     * again shortly. Entries are only handed out once.
+     * 
+     * Events arriving meanwhile are {@link #defer deferred} behind them, 
+     * so nothing overtakes an older event for the same issue. Entries 
+     * {@link #requeue requeued} later go to the same replayer.
+     */
+    public void replay(final Replayer replayer)
+    {
+        synchronized (backlog)
+        {
+            this.replayer = replayer;
+            if (!backlog.isEmpty())
+            {
+                LOGGER.log(Level.INFO, "Replaying {0} webhook events", backlog.size());
+                drain();
+            }
+        }
+    }
+    
+    /**
+     * Starts handing the backlog to the replayer, unless that's already 
+     * happening. Called holding the backlog's lock.
+     */
+    private void drain()
+    {
+        if (draining || replayer == null)
+        {
+            return;
+        }
+        draining = true;
+        final Replayer target = replayer;
+        Thread thread = new Thread(() ->
+        {
+            try
+            {
+                while (true)
+                {
+                    Entry entry;
+                    synchronized (backlog)
+                    {
+                        // Stays at the head until it's taken, so anything 
+                        // arriving meanwhile is deferred behind it
+                        entry = backlog.peek();
+                        if (entry == null)
+                        {
+                            draining = false;
+                            return;
+                        }
+                    }
+                    offer(target, entry);
+                    synchronized (backlog)
+                    {
+                        backlog.poll();
+                    }
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                LOGGER.log(Level.WARNING, "Replay interrupted; the rest is left for next time");
+            }
+        }, "journal-replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Puts a newly appended entry behind those still waiting to be 
+     * replayed, if there are any; it's then handed to the replayer in turn
+     * and must not be queued by the caller.
+     * 
+     * @param payload kept with the entry for the replayer
+     * @return false if nothing is waiting (or the journal isn't kept), and
+     * the caller should queue the event itself
+     */
+    public boolean defer(Entry entry, byte[] payload)
+    {
+        if (entry == null)
+        {
+            return false;
+        }
+        synchronized (backlog)
+        {
+            if (backlog.isEmpty())
+            {
+                return false;
+            }
+            entry.payload = payload;
+            backlog.add(entry);
+            return true;
+        }
+    }
+    
+    /**
+     * Keeps an entry whose event the queue had no room for; it's handed to
+     * the replayer once there is, and events arriving meanwhile are 
+     * deferred behind it.
+     * 
+     * @param payload kept with the entry for the replayer
+     * @return false if the journal isn't kept (or is closed), and the 
+     * event can't be held on to
+     */
+    public boolean requeue(Entry entry, byte[] payload)
+    {
+        if (entry == null || closed)
+        {
+            return false;
+        }
+        synchronized (backlog)
+        {
+            entry.payload = payload;
+            backlog.add(entry);
+            drain();
+            return true;
+        }
+    }
+    
+    private void offer(Replayer replayer, Entry entry) throws InterruptedException
+    {
+        try
+        {
+            while (!replayer.replay(entry))
+            {
+                if (closed)
+                {
+                    throw new InterruptedException();
+                }
+                Thread.sleep(REPLAY_RETRY);
+            }
+            replayed.incrementAndGet();
+        }
+        catch (RuntimeException ex)
+        {
+            LOGGER.log(Level.SEVERE, "Replaying journal entry " + entry.seq + " failed", ex);
+            complete(entry);
+        }
+    }
+    
+    /**
+     * Entries waiting to be handed to the replayer.
+     */
+    public int getBacklog()
+    {
+        synchronized (backlog)
+        {
+            return backlog.size();
+        }
+    }
+    
+    /**
+     * Stops taking appends and syncs what's been appended. Entries that 
+     * aren't done stay in the journal to be replayed next time.
+     */
+    public void shutdown()
+    {
+        if (!isEnabled())
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            closed = true;
+        }
+        synchronized (syncLock)
+        {
+            stopped = true;
+            syncLock.notifyAll();
+        }
+        try
+        {
+            syncer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        // Picks up entries marked done since they were synced
+        for (Segment segment : segments)
+        {
+            segment.buffer.force();
+        }
+    }
+    
+    public long getAppended()
+    {
+        return appended.get();
+    }
+    
+    public long getAppendedBytes()
+    {
+        return appendedBytes.get();
+    }
+    
+    public long getCompleted()
+    {
+        return completed.get();
+    }
+    
+    /**
+     * Entries not yet done, including any waiting to be replayed.
+     */
+    public long getPending()
+    {
+        return pending.get();
+    }
+    
+    public long getReplayed()
+    {
+        return replayed.get();
+    }
+    
+    public int getSegments()
+    {
+        return segments.size();
+    }
+    
+    public long getSyncs()
+    {
+        return syncs.get();
+    }
+    
+    public long getSyncMillis()
+    {
+        return syncMillis.get();
+    }
+    
+    public interface Replayer
+    {
+        /**
+         * Takes the entry, completing it once its event is processed.
+         * 
+         * @return false if it can't be taken right now
+         */
+        boolean replay(Entry entry);
+    }
+    
+    public static class Entry
+    {
+        private final long seq;
+        private final String source;
+        // Set before the entry is deferred; guarded by the backlog
+        private byte[] payload;
+        private final Segment segment;
+        private final int position;
+        private final AtomicBoolean done = new AtomicBoolean();
+        
+        private Entry(long seq, String source, byte[] payload, Segment segment, int position)
+        {
+            this.seq = seq;
+            this.source = source;
+            this.payload = payload;
+            this.segment = segment;
+            this.position = position;
+        }
+
+        public long getSeq()
+        {
+            return seq;
+        }
+
+        public String getSource()
+        {
+            return source;
+        }
+        
+        /**
+         * The payload; only kept for entries read back for replay or 
+         * deferred behind them.
+         */
+        public byte[] getPayload()
+        {
+            return payload;
+        }
+    }
+    
+    private static class Segment
+    {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        // Where the next entry goes; guarded by the journal
+        private int position;
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean sealed;
+        private final AtomicBoolean deleted = new AtomicBoolean();
+        
+        Segment(File file, MappedByteBuffer buffer)
+        {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
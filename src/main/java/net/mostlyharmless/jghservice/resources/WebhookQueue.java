@@ -0,0 +1,357 @@
+/*
+ * Copyright 2014 Brian Roach <roach at mostlyharmless dot net>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.mostlyharmless.jghservice.resources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.mostlyharmless.jghservice.connector.BoundedExecutor;
+
+/**
+ * Where webhook events wait to be processed once they've been acknowledged.
+ * 
+ * Github gives up on a delivery after 10 seconds, and handling one event 
+ * can take longer than that (a pull request mentioning several issues, a 
+ * slow JIRA), so the webhooks only check the payload, queue the work here
+ * and answer 202. The queue is bounded; when it's full the webhook says 
+ * so with a 503 rather than accepting work it can't get to.
+ * 
+ * Events for the same issue have to be applied in the order they arrived 
+ * (a "labeled" then an "unlabeled", a status change then a reopen), so 
+ * the queue is split into partitions, each with its own worker and its 
+ * own share of the capacity. An event's partition is picked by hashing 
+ * its key (the repository and issue number, or the JIRA issue key): 
+ * events for one issue are processed one after another, events for 
+ * different issues in parallel. 
+ * 
+ * A partition whose queue gets half full is flagged as hot, and a warning
+ * logged with the key that pushed it over; one busy issue can only fill 
+ * its own partition, not hold up the rest.
+ *
+ * @author Brian Roach <roach at mostlyharmless dot net>
+ */
+public class WebhookQueue
+{
+    private static final Logger LOGGER = Logger.getLogger(WebhookQueue.class.getName());
+    
+    private final List<Partition> partitions = new ArrayList<>();
+    private final int capacity;
+    
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong waitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    private final AtomicLong processingMillis = new AtomicLong();
+    private final AtomicLong maxProcessingMillis = new AtomicLong();
+    
+    /**
+     * @param workers the number of partitions, each with one worker
+     * @param capacity the number of events that can be waiting, split 
+     * evenly between the partitions
+     */
+    public WebhookQueue(int workers, int capacity)
+    {
+        int partitionCapacity = Math.max(1, (capacity + workers - 1) / workers);
+        for (int i = 0; i < workers; i++)
+        {
+            partitions.add(new Partition(i, partitionCapacity));
+        }
+        this.capacity = partitionCapacity * workers;
+    }
+    
+    /**
+     * Queues the work for an event behind any other work with the same key.
+     * 
+     * @param event what the work is for, for logging
+     * @param key what the work has to be ordered by, e.g. the issue it's for
+     * @return false if the event's partition is full (or shut down) and the
+     * work was not accepted
+     */
+    public boolean submit(final String event, String key, final Runnable work)
+    {
+        final Partition partition = partitionFor(key);
+        final long enqueuedAt = System.nanoTime();
+        try
+        {
+            partition.executor.execute(() -> run(partition, event, work, enqueuedAt));
+        }
+        catch (RejectedExecutionException ex)
+        {
+            partition.rejected.incrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        
+        partition.enqueued.incrementAndGet();
+        enqueued.incrementAndGet();
+        partition.lastKey = key;
+        int depth = partition.getDepth();
+        record(partition.maxDepth, depth);
+        if (depth >= partition.hotDepth && !partition.hot)
+        {
+            partition.hot = true;
+            partition.timesHot.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Webhook partition {0} is hot: {1} events queued, latest for {2}", 
+                       new Object[] { partition.index, depth, key });
+        }
+        return true;
+    }
+    
+    private Partition partitionFor(String key)
+    {
+        int hash = key == null ? 0 : key.hashCode();
+        // Mix the high bits into the low ones the modulus keeps
+        hash ^= (hash >>> 16);
+        return partitions.get((hash & Integer.MAX_VALUE) % partitions.size());
+    }
+    
+    private void run(Partition partition, String event, Runnable work, long enqueuedAt)
+    {
+        long start = System.nanoTime();
+        record(waitMillis, maxWaitMillis, TimeUnit.NANOSECONDS.toMillis(start - enqueuedAt));
+        if (partition.hot && partition.getDepth() < partition.hotDepth / 2)
+        {
+            partition.hot = false;
+        }
+        try
+        {
+            work.run();
+            completed.incrementAndGet();
+        }
+        catch (RuntimeException ex)
+        {
+            failed.incrementAndGet();
+            LOGGER.log(Level.SEVERE, "Processing '" + event + "' event failed", ex);
+        }
+        finally
+        {
+            record(processingMillis, maxProcessingMillis, 
+                   TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+    
+    private static void record(AtomicLong max, long value)
+    {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value))
+        {
+            current = max.get();
+        }
+    }
+    
+    private static void record(AtomicLong total, AtomicLong max, long millis)
+    {
+        total.addAndGet(millis);
+        record(max, millis);
+    }
+    
+    /**
+     * Stops taking new work and waits up to the timeout for what's queued 
+     * to be processed.
+     */
+    public void shutdown(long timeout)
+    {
+        for (Partition partition : partitions)
+        {
+            partition.executor.shutdown();
+        }
+        long end = System.currentTimeMillis() + timeout;
+        try
+        {
+            for (Partition partition : partitions)
+            {
+                long remaining = Math.max(0, end - System.currentTimeMillis());
+                if (!partition.executor.awaitTermination(remaining, TimeUnit.MILLISECONDS))
+                {
+                    LOGGER.log(Level.WARNING, "{0} queued webhook events in partition {1} were not processed", 
+                               new Object[] { partition.getDepth(), partition.index });
+                }
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public int getCapacity()
+    {
+        return capacity;
+    }
+    
+    /**
+     * Events waiting for a worker.
+     */
+    public int getDepth()
+    {
+        int depth = 0;
+        for (Partition partition : partitions)
+        {
+            depth += partition.getDepth();
+        }
+        return depth;
+    }
+    
+    /**
+     * Events being processed right now.
+     */
+    public int getActive()
+    {
+        int active = 0;
+        for (Partition partition : partitions)
+        {
+            active += partition.executor.getActiveCount();
+        }
+        return active;
+    }
+
+    public long getEnqueued()
+    {
+        return enqueued.get();
+    }
+
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+
+    public long getCompleted()
+    {
+        return completed.get();
+    }
+
+    public long getFailed()
+    {
+        return failed.get();
+    }
+    
+    /**
+     * Total time events have waited in the queue, in milliseconds.
+     */
+    public long getWaitMillis()
+    {
+        return waitMillis.get();
+    }
+
+    public long getMaxWaitMillis()
+    {
+        return maxWaitMillis.get();
+    }
+    
+    /**
+     * Total time spent processing events, in milliseconds.
+     */
+    public long getProcessingMillis()
+    {
+        return processingMillis.get();
+    }
+
+    public long getMaxProcessingMillis()
+    {
+        return maxProcessingMillis.get();
+    }
+    
+    public List<Partition> getPartitions()
+    {
+        return Collections.unmodifiableList(partitions);
+    }
+    
+    /**
+     * One worker and the events waiting for it.
+     */
+    public static class Partition
+    {
+        private final int index;
+        private final int capacity;
+        private final int hotDepth;
+        private final BoundedExecutor executor;
+        
+        private final AtomicLong enqueued = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong maxDepth = new AtomicLong();
+        private final AtomicLong timesHot = new AtomicLong();
+        private volatile boolean hot;
+        private volatile String lastKey;
+        
+        Partition(int index, int capacity)
+        {
+            this.index = index;
+            this.capacity = capacity;
+            this.hotDepth = Math.max(1, capacity / 2);
+            this.executor = new BoundedExecutor("webhook-" + index, 1, capacity);
+        }
+
+        public int getIndex()
+        {
+            return index;
+        }
+
+        public int getCapacity()
+        {
+            return capacity;
+        }
+        
+        public int getDepth()
+        {
+            return executor.getQueue().size();
+        }
+
+        public long getMaxDepth()
+        {
+            return maxDepth.get();
+        }
+
+        public long getEnqueued()
+        {
+            return enqueued.get();
+        }
+
+        public long getRejected()
+        {
+            return rejected.get();
+        }
+        
+        /**
+         * Whether the queue has reached half its capacity and not yet 
+         * drained back below a quarter.
+         */
+        public boolean isHot()
+        {
+            return hot;
+        }
+
+        public long getTimesHot()
+        {
+            return timesHot.get();
+        }
+        
+        /**
+         * The key of the latest event queued here.
+         */
+        public String getLastKey()
+        {
+            return lastKey;
+        }
+    }
+}
@@ -16,36 +16,53 @@
 
 package net.mostlyharmless.jghservice.resources.github;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import net.mostlyharmless.jghservice.connector.Bulkhead;
+import net.mostlyharmless.jghservice.connector.Codecs;
+import net.mostlyharmless.jghservice.connector.Deadline;
 import net.mostlyharmless.jghservice.connector.github.GetCommentsOnIssue;
 import net.mostlyharmless.jghservice.connector.github.GithubConnector;
 import net.mostlyharmless.jghservice.connector.github.ModifyComment;
+import net.mostlyharmless.jghservice.connector.github.PagedIterator;
 import net.mostlyharmless.jghservice.connector.github.SetLabelsOnIssue;
 import net.mostlyharmless.jghservice.connector.github.UpdatePullRequest;
 import net.mostlyharmless.jghservice.connector.jira.AddExternalLinkToIssue;
 import net.mostlyharmless.jghservice.connector.jira.CreateIssue;
 import net.mostlyharmless.jghservice.connector.jira.GetIssue;
+import net.mostlyharmless.jghservice.connector.jira.IssueCreateBatcher;
+import net.mostlyharmless.jghservice.connector.jira.IssueFields;
 import net.mostlyharmless.jghservice.connector.jira.JiraConnector;
 import net.mostlyharmless.jghservice.connector.jira.PostComment;
-import net.mostlyharmless.jghservice.connector.jira.SearchIssues;
+import net.mostlyharmless.jghservice.connector.jira.SearchIssueFields;
+import net.mostlyharmless.jghservice.connector.jira.SearchResults;
 import net.mostlyharmless.jghservice.connector.jira.UpdateIssue;
-import net.mostlyharmless.jghservice.connector.jira.UpdateVersionsOnIssue;
+import net.mostlyharmless.jghservice.connector.jira.VersionUpdateDebouncer;
+import net.mostlyharmless.jghservice.resources.EventBulkheads;
 import net.mostlyharmless.jghservice.resources.ServiceConfig;
+import net.mostlyharmless.jghservice.resources.WebhookDeduplicator;
+import net.mostlyharmless.jghservice.resources.WebhookJournal;
+import net.mostlyharmless.jghservice.resources.WebhookQueue;
 import net.mostlyharmless.jghservice.resources.github.GithubEvent.Milestone;
 import net.mostlyharmless.jghservice.resources.ServiceConfig.Repository;
 import net.mostlyharmless.jghservice.resources.github.GithubEvent.Comment;
@@ -60,6 +77,22 @@ public class GithubWebhook
 {
     @Inject
     ServiceConfig config;
+    @Inject
+    JiraConnector jiraConnector;
+    @Inject
+    GithubConnector githubConnector;
+    @Inject
+    IssueCreateBatcher issueBatcher;
+    @Inject
+    EventBulkheads eventBulkheads;
+    @Inject
+    WebhookQueue webhookQueue;
+    @Inject
+    WebhookJournal journal;
+    @Inject
+    WebhookDeduplicator deduplicator;
+    @Inject
+    VersionUpdateDebouncer versionDebouncer;
     
     private static final Pattern jiraIssuePattern = 
         Pattern.compile("\\[JIRA: ([-A-Z0-9]+)\\]");
@@ -87,10 +120,173 @@ public class GithubWebhook
     
     private static final Logger LOGGER = Logger.getLogger(GithubWebhook.class.getName());
     
+    private static final List<String> HANDLED_ACTIONS = 
+        Arrays.asList(GITHUB_ISSUE_OPENED, GITHUB_COMMENT_CREATED, 
+                      GITHUB_ASSIGNED, GITHUB_UNASSIGNED, 
+                      GITHUB_LABELED, GITHUB_UNLABELED);
+    
+    // Started when processing starts; bounds every command run for the event
+    private Deadline deadline = Deadline.NONE;
+    // Work for the event that carries on after processing returns
+    private CompletableFuture<Void> deferred = CompletableFuture.completedFuture(null);
+    
+    /**
+     * Checks the event, journals it and queues it to be processed, 
+     * answering 202 once it's journaled. Events we have nothing to do 
+     * for get a 200, as do deliveries we've already accepted. One the 
+     * queue has no room for waits in the journal until it has.
+     */
     @POST
     @Consumes({MediaType.APPLICATION_JSON})
     @Produces(MediaType.APPLICATION_JSON)
-    public Response githubWebhook(GithubEvent event)
+    public Response githubWebhook(@HeaderParam("X-GitHub-Delivery") String delivery,
+                                  byte[] payload)
+    {
+        final GithubEvent event = parse(payload);
+        if (event == null || event.getAction() == null)
+        {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        
+        if (!HANDLED_ACTIONS.contains(event.getAction()))
+        {
+            return Response.ok().build();
+        }
+        
+        // Github sends the same delivery again if we were slow to answer; 
+        // it only needs acknowledging. If it's refused below it's 
+        // forgotten again so the retry gets through.
+        final String deliveryKey = delivery == null ? null : "github:" + delivery;
+        if (!deduplicator.firstSeen(deliveryKey))
+        {
+            LOGGER.log(Level.INFO, "Ignoring repeated delivery {0}", delivery);
+            return Response.ok().build();
+        }
+        
+        // Once it's journaled the event survives a restart
+        final WebhookJournal.Entry entry;
+        try
+        {
+            entry = journal.append(WebhookJournal.GITHUB, payload);
+        }
+        catch (IOException ex)
+        {
+            LOGGER.log(Level.WARNING, "Rejected '" + event.getAction() + "' event: " + ex.getMessage());
+            deduplicator.forget(deliveryKey);
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+        }
+        
+        // Events journaled before a restart go first; this one follows them
+        if (journal.defer(entry, payload))
+        {
+            return Response.accepted().build();
+        }
+        
+        boolean queued = webhookQueue.submit("github:" + event.getAction(), 
+                                             partitionKey(event), 
+                                             () -> handle(event, entry));
+        
+        if (!queued)
+        {
+            // Github won't send it again, so it waits in the journal for 
+            // room on the queue
+            if (journal.requeue(entry, payload))
+            {
+                LOGGER.log(Level.WARNING, "Work queue is full; delivery " + delivery 
+                    + " ('" + event.getAction() + "') waits in the journal");
+                return Response.accepted().build();
+            }
+            LOGGER.log(Level.SEVERE, "Dropped delivery " + delivery + " ('" + event.getAction() 
+                + "'): work queue is full and there's no journal to keep it in");
+            deduplicator.forget(deliveryKey);
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+        }
+        
+        return Response.accepted().build();
+    }
+    
+    /**
+     * Events for the same issue or pull request are processed in order.
+     */
+    private static String partitionKey(GithubEvent event)
+    {
+        String repository = event.getRepository() == null ? "" : event.getRepository().getName();
+        if (event.hasIssue())
+        {
+            return repository + "#" + event.getIssue().getNumber();
+        }
+        if (event.hasPullRequest())
+        {
+            return repository + "#" + event.getPullRequest().getNumber();
+        }
+        return repository;
+    }
+    
+    /**
+     * Queues an event read back from the journal after a restart, in the
+     * same partition a new one for its issue would go to.
+     * 
+     * @return false if the queue is full
+     */
+    public boolean replay(final WebhookJournal.Entry entry)
+    {
+        final GithubEvent event = parse(entry.getPayload());
+        if (event == null || event.getAction() == null)
+        {
+            journal.complete(entry);
+            return true;
+        }
+        return webhookQueue.submit("github:" + event.getAction(), partitionKey(event), 
+                                   () -> handle(event, entry));
+    }
+    
+    private static GithubEvent parse(byte[] payload)
+    {
+        try
+        {
+            return Codecs.mapper().readValue(payload, GithubEvent.class);
+        }
+        catch (IOException ex)
+        {
+            return null;
+        }
+    }
+    
+    /**
+     * Processes a queued event. The event's bulkhead limits how many of 
+     * its kind are processed at once; a worker waits for a slot (within 
+     * the deadline) rather than turning away an event already accepted.
+     */
+    private void handle(GithubEvent event, WebhookJournal.Entry entry)
+    {
+        deadline = Deadline.after(config.getWebhooks().getDeadline());
+        
+        final Bulkhead bulkhead = eventBulkheads.get("github:" + event.getAction());
+        try
+        {
+            bulkhead.acquireWithin(deadline);
+        }
+        catch (IOException ex)
+        {
+            LOGGER.log(Level.WARNING, "Gave up on '" + event.getAction() + "' event: " + ex.getMessage());
+            journal.complete(entry);
+            return;
+        }
+        
+        try
+        {
+            process(event);
+        }
+        finally
+        {
+            // The slot is only for processing; the event is done once a 
+            // debounced version update is
+            bulkhead.release();
+            deferred.whenComplete((result, ex) -> journal.complete(entry));
+        }
+    }
+    
+    private void process(GithubEvent event)
     {
         switch(event.getAction())
         {
@@ -112,12 +308,17 @@ public class GithubWebhook
                 break;
                 
         }
-        return Response.ok().build();
+        
+        if (!deadline.getIncomplete().isEmpty())
+        {
+            LOGGER.log(Level.WARNING, "Deadline expired processing '" + event.getAction() 
+                + "' event; incomplete: " + deadline.getIncomplete());
+        }
     }
     
     private String processOpenedEvent(GithubEvent event)
     {
-        JiraConnector conn = new JiraConnector(config);
+        JiraConnector conn = jiraConnector;
         String jiraIssueKey = null;
         
         if (event.hasIssue())
@@ -136,15 +337,13 @@ public class GithubWebhook
                         .withCustomField(githubIssueField, event.getIssue().getNumber())
                         .withJiraIssueKey(jiraIssueKey)
                         .build();
-                try
-                {
-                    conn.execute(update);
-                    createExternalLink(conn, jiraIssueKey, event);
-                }
-                catch (ExecutionException ex)
-                {
-                    Logger.getLogger(GithubWebhook.class.getName()).log(Level.SEVERE, null, ex);
-                }
+                
+                // Neither depends on the other
+                CompletableFuture<String> updated = conn.executeAsync(update, deadline);
+                CompletableFuture<String> linked = 
+                    conn.executeAsync(buildExternalLink(jiraIssueKey, event), deadline);
+                await(updated);
+                await(linked);
             }
             else
             {
@@ -190,18 +389,18 @@ public class GithubWebhook
                                 " and cf[" + cfNumber +
                                 "] = \"" + epicName + "\""; 
                     
-                    SearchIssues search = 
-                        new SearchIssues.Builder()
+                    // Only the key is needed, and there should only be one
+                    SearchIssueFields search = 
+                        new SearchIssueFields.Builder()
                             .withJQL(jql)
+                            .withMaxResults(1)
                             .build();
                     try
                     {
-                        List<JiraEvent.Issue> epicList = conn.execute(search);
-                        // Should only return one or zero.
+                        List<IssueFields> epicList = conn.execute(search, deadline).getIssues();
                         if (!epicList.isEmpty())
                         {
-                            JiraEvent.Issue epic = epicList.get(0);
-                            epicJiraKey = epic.getJiraIssueKey();
+                            epicJiraKey = epicList.get(0).getKey();
                         }
                         
                     }
@@ -278,8 +477,8 @@ public class GithubWebhook
                 
                 try
                 {
-                    jiraIssueKey = conn.execute(builder.build());
-                    createExternalLink(conn, jiraIssueKey, event);
+                    jiraIssueKey = issueBatcher.create(builder.build(), deadline);
+                    conn.execute(buildExternalLink(jiraIssueKey, event), deadline);
                 }
                 catch (ExecutionException ex)
                 {
@@ -296,7 +495,7 @@ public class GithubWebhook
         return jiraIssueKey;
     }
     
-    private void createExternalLink(JiraConnector conn, String jiraIssueKey, GithubEvent event) throws ExecutionException
+    private AddExternalLinkToIssue buildExternalLink(String jiraIssueKey, GithubEvent event)
     {
         AddExternalLinkToIssue.Builder builder = 
             new AddExternalLinkToIssue.Builder()
@@ -324,10 +523,25 @@ public class GithubWebhook
                 .withUrl(pr.getUrl());
         }
         
-        AddExternalLinkToIssue add = builder.build();
-        
-        conn.execute(add);
-                
+        return builder.build();
+    }
+    
+    private <T> T await(Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException ex)
+        {
+            Logger.getLogger(GithubWebhook.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            Logger.getLogger(GithubWebhook.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return null;
     }
     
     private List<String> scanForGithubIssueMentions(String body)
@@ -351,7 +565,7 @@ public class GithubWebhook
         Matcher m = jiraIssueMention.matcher(body);
         while (m.find())
         {
-            if (config.getProjectKeys().contains(m.group(2)))
+            if (config.getProjectKeys(jiraConnector).contains(m.group(2)))
             {
                 directJiraMentions.add(m.group(1));
             }
@@ -391,7 +605,21 @@ public class GithubWebhook
             config.getRepoForGithubName(event.getRepository().getName());
         String jiraProjectKey = repo.getJiraProjectKey();
 
-        Map<String, String> jiraKeyToGhNum = new HashMap<>();
+        // Every lookup and link below is independent of the others, so they
+        // are all started up front and only waited on once. Links for issues
+        // found via a GH issue number are chained onto their search.
+        List<CompletableFuture<?>> pending = new LinkedList<>();
+        Map<String, CompletableFuture<JiraEvent.Issue>> directLookups = new HashMap<>();
+        Map<String, CompletableFuture<List<IssueFields>>> searches = new LinkedHashMap<>();
+        
+        for (String jKey : directJiraMentions)
+        {
+            pending.add(conn.executeAsync(buildExternalLink(jKey, event), deadline));
+            
+            // Get GH issue number from issue in JIRA
+            GetIssue get = new GetIssue.Builder().withIssueKey(jKey).build();
+            directLookups.put(jKey, conn.executeAsync(get, deadline));
+        }
         
         for (String ghIssueNum : ghIssueNumbers)
         {
@@ -399,40 +627,54 @@ public class GithubWebhook
                     " and cf[" + cfNumber +
                     "] = " + ghIssueNum;
 
-            SearchIssues search = 
-                new SearchIssues.Builder()
+            // Only the keys are needed
+            SearchIssueFields search = 
+                new SearchIssueFields.Builder()
                     .withJQL(jql)
                     .build();
-            try
+            
+            CompletableFuture<List<IssueFields>> found = 
+                conn.executeAsync(search, deadline).thenApply(SearchResults::getIssues);
+            searches.put(ghIssueNum, found);
+            pending.add(found.thenCompose(issues ->
             {
-                List<JiraEvent.Issue> issues = conn.execute(search);
-                for (JiraEvent.Issue issue : issues)
+                List<CompletableFuture<String>> links = new LinkedList<>();
+                for (IssueFields issue : issues)
                 {
-                    ghIssueMentions.add(issue.getJiraIssueKey());
-                    jiraKeyToGhNum.put(issue.getJiraIssueKey(), ghIssueNum);
+                    links.add(conn.executeAsync(buildExternalLink(issue.getKey(), event), deadline));
                 }
-            }
-            catch (ExecutionException ex)
+                return CompletableFuture.allOf(links.toArray(new CompletableFuture<?>[links.size()]));
+            }));
+        }
+        
+        for (CompletableFuture<?> f : pending)
+        {
+            await(f);
+        }
+        
+        // Now we have all the JIRA issues mentioned in this PR, either
+        // directly or indirectly, and they have been linked to the PR.
+        Map<String, String> jiraKeyToGhNum = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<List<IssueFields>>> entry : searches.entrySet())
+        {
+            // Failures were already logged above
+            if (!entry.getValue().isCompletedExceptionally())
             {
-                Logger.getLogger(GithubWebhook.class.getName()).log(Level.SEVERE, null, ex);
+                for (IssueFields issue : entry.getValue().join())
+                {
+                    ghIssueMentions.add(issue.getKey());
+                    jiraKeyToGhNum.put(issue.getKey(), entry.getKey());
+                }
             }
         }
 
-        // Now we have all the JIRA issues mentioned in this PR, either
-        // directly or indirectly. Update them with the link to the PR
         List<String> jiraIssueKeys = new LinkedList<>();
         jiraIssueKeys.addAll(directJiraMentions);
         jiraIssueKeys.addAll(ghIssueMentions);
-        for (String jKey : jiraIssueKeys)
+        
+        if (jiraIssueKeys.isEmpty())
         {
-            try
-            {
-                createExternalLink(conn, jKey, event);
-            }
-            catch (ExecutionException ex)
-            {
-                Logger.getLogger(GithubWebhook.class.getName()).log(Level.SEVERE, null, ex);
-            }
+            return;
         }
 
         // For direct JIRA mentions, we want to update the PR
@@ -441,64 +683,58 @@ public class GithubWebhook
         // issue update out. It seems as though editing a PR in GH doesn't
         // send out a update notice which is kinda annoying on one hand,
         // but should work well here. 
-
-        GithubConnector ghConn = new GithubConnector(config);
-
         for (String jKey : jiraIssueKeys)
         {
-            try
+            if (jiraKeyToGhNum.containsKey(jKey))
             {
-                if (jiraKeyToGhNum.containsKey(jKey))
-                {
-                    String ghIssueNum = jiraKeyToGhNum.get(jKey);
-                    body = body.replace("#" + ghIssueNum, "#" + ghIssueNum + " (" + jKey + ")");
-                }
-                else
-                {
-                    // Get GH issue number from issue in JIRA
-                    GetIssue get = new GetIssue.Builder().withIssueKey(jKey).build();
-                    JiraEvent.Issue issue = conn.execute(get);
-                    // update this PR body with the GH issue number
-                    if (issue.hasGithubIssueNumber(config))
-                    {
-                        body = body.replace(jKey, jKey + " (#" + issue.getGithubIssueNumber(config) +")");
-                    }
-                }
-                
-                if (event.hasPullRequest())
+                String ghIssueNum = jiraKeyToGhNum.get(jKey);
+                body = body.replace("#" + ghIssueNum, "#" + ghIssueNum + " (" + jKey + ")");
+            }
+            else
+            {
+                JiraEvent.Issue issue = await(directLookups.get(jKey));
+                // update this PR body with the GH issue number
+                if (issue != null && issue.hasGithubIssueNumber(config))
                 {
-                    UpdatePullRequest update = 
-                        new UpdatePullRequest.Builder()
-                            .withRepository(repo)
-                            .withBody(body)
-                            .withPullRequestNumber(event.getPullRequest().getNumber())
-                            .build();
-
-                    ghConn.execute(update);
-
+                    body = body.replace(jKey, jKey + " (#" + issue.getGithubIssueNumber(config) +")");
                 }
-                else // pull request comment
-                {
-                    ModifyComment modify = 
-                        new ModifyComment.Builder()
-                            .withBody(body)
-                            .withRepository(repo)
-                            .withCommentId(event.getComment().getId())
-                            .build();
+            }
+        }
+        
+        try
+        {
+            if (event.hasPullRequest())
+            {
+                UpdatePullRequest update = 
+                    new UpdatePullRequest.Builder()
+                        .withRepository(repo)
+                        .withBody(body)
+                        .withPullRequestNumber(event.getPullRequest().getNumber())
+                        .build();
 
-                    ghConn.execute(modify);
-                }
+                githubConnector.execute(update, deadline);
             }
-            catch (ExecutionException ex)
+            else // pull request comment
             {
-                Logger.getLogger(GithubWebhook.class.getName()).log(Level.SEVERE, null, ex);
+                ModifyComment modify = 
+                    new ModifyComment.Builder()
+                        .withBody(body)
+                        .withRepository(repo)
+                        .withCommentId(event.getComment().getId())
+                        .build();
+
+                githubConnector.execute(modify, deadline);
             }
         }
+        catch (ExecutionException ex)
+        {
+            Logger.getLogger(GithubWebhook.class.getName()).log(Level.SEVERE, null, ex);
+        }
     }
     
     private void processCreatedEvent(GithubEvent event)
     {
-        JiraConnector conn = new JiraConnector(config);
+        JiraConnector conn = jiraConnector;
         
         if (event.hasIssue() && event.hasComment())
         {
@@ -538,18 +774,20 @@ public class GithubWebhook
                         String jiraIssueKey = processOpenedEvent(event);
 
                         // Now we have to import comments
-                        GithubConnector ghConn = new GithubConnector(config);
+                        GithubConnector ghConn = githubConnector;
 
                         GetCommentsOnIssue get =
                             new GetCommentsOnIssue.Builder()
                                 .withRepository(repo)
                                 .withIssueNumber(event.getIssue().getNumber())
                                 .build();
-                        try
+                        // Next page of comments loads while this one is 
+                        // being posted
+                        try (PagedIterator<Comment> comments = ghConn.iterate(get, deadline, true))
                         {
-                            List<GithubEvent.Comment> comments = ghConn.execute(get);
-                            for (Comment comment : comments)
+                            while (comments.hasNext())
                             {
+                                Comment comment = comments.next();
                                 postCommentToJira(conn, jiraIssueKey, 
                                                   comment.getUser().getLogin(), 
                                                   comment.getBody());
@@ -579,7 +817,7 @@ public class GithubWebhook
                 .build();
         try
         {
-            conn.execute(post);
+            conn.execute(post, deadline);
         }
         catch (ExecutionException ex)
         {
@@ -601,14 +839,14 @@ public class GithubWebhook
                 Matcher m = jiraIssuePattern.matcher(title); 
                 if (m.find())
                 {
-                    JiraConnector conn = new JiraConnector(config);
+                    JiraConnector conn = jiraConnector;
                     GetIssue get = 
                         new GetIssue.Builder()
                             .withIssueKey(m.group(1))
                             .build();
                     try
                     {
-                        JiraEvent.Issue issue = conn.execute(get);
+                        JiraEvent.Issue issue = conn.execute(get, deadline);
                         String jiraCurrentAssignee = issue.getAssignee();
                         
                         if (event.getAction().equals(GITHUB_UNASSIGNED))
@@ -623,7 +861,7 @@ public class GithubWebhook
                                         .withAssignee(UpdateIssue.NO_ASSIGNEE)
                                         .build();
                                 
-                                conn.execute(update);
+                                conn.execute(update, deadline);
                             }
                         }
                         else
@@ -637,7 +875,7 @@ public class GithubWebhook
                                         .withAssignee(jiraUser)
                                         .build();
                                 
-                                conn.execute(update);
+                                conn.execute(update, deadline);
                             }
                         }
                     }
@@ -666,87 +904,44 @@ public class GithubWebhook
                 if (m.find())
                 {
                     String jiraIssueKey = m.group(1);
-
-                    // Git the Jira issue and check the versions
-                    JiraConnector conn = new JiraConnector(config);
+                    boolean present = event.getAction().equals(GITHUB_LABELED);
                     
-                    GetIssue get = 
-                        new GetIssue.Builder()
-                            .withIssueKey(jiraIssueKey)
-                            .build();
-                    try
+                    // The debouncer folds this in with any other version 
+                    // label changes to the issue and checks the lot 
+                    // against JIRA with one read and one update.
+                    CompletableFuture<Void> change = null;
+                    m = extractFixedVersion.matcher(label.getName());
+                    if (m.find())
                     {
-                        JiraEvent.Issue jiraIssue = conn.execute(get);
-                        
-                        m = extractFixedVersion.matcher(label.getName());
+                        change = versionDebouncer.fixVersion(jiraIssueKey, m.group(1), 
+                                                             present, deadline);
+                    }
+                    else
+                    {
+                        m = extractAffectsVersion.matcher(label.getName());
                         if (m.find())
                         {
-                            String version = m.group(1);
-                            if (event.getAction().equals(GITHUB_LABELED) &&
-                                !jiraIssue.getFixVersions().contains(version))
-                            {
-                                UpdateVersionsOnIssue update =
-                                    new UpdateVersionsOnIssue.Builder()
-                                        .withIssueKey(jiraIssueKey)
-                                        .addFixVersion(version)
-                                        .build();
-                                
-                                conn.execute(update);
-                            }
-                            else if (event.getAction().equals(GITHUB_UNLABELED) &&
-                                     jiraIssue.getFixVersions().contains(version))
-                            {
-                                UpdateVersionsOnIssue update =
-                                    new UpdateVersionsOnIssue.Builder()
-                                        .withIssueKey(jiraIssueKey)
-                                        .removeFixVersion(version)
-                                        .build();
-                                
-                                conn.execute(update);
-                            }
-
+                            change = versionDebouncer.affectsVersion(jiraIssueKey, m.group(1), 
+                                                                     present, deadline);
                         }
-                        else
+                    }
+                    
+                    // Not waited for here: the issue's next label event is
+                    // queued behind this one and has to reach the debouncer
+                    // to be folded in.
+                    if (change != null)
+                    {
+                        deferred = change.whenComplete((result, ex) ->
                         {
-                            m = extractAffectsVersion.matcher(label.getName());
-                            if (m.find())
+                            if (ex != null)
                             {
-                                String version = m.group(1);
-                                if (event.getAction().equals(GITHUB_LABELED) &&
-                                    !jiraIssue.getAffectsVersions().contains(version))
-                                {
-                                    UpdateVersionsOnIssue update =
-                                        new UpdateVersionsOnIssue.Builder()
-                                            .withIssueKey(jiraIssueKey)
-                                            .addAffectsVersion(version)
-                                            .build();
-                                    
-                                    conn.execute(update);
-                                }
-                                else if (event.getAction().equals(GITHUB_UNLABELED) &&
-                                            jiraIssue.getAffectsVersions().contains(version))
-                                {
-                                    UpdateVersionsOnIssue update =
-                                        new UpdateVersionsOnIssue.Builder()
-                                            .withIssueKey(jiraIssueKey)
-                                            .removeAffectsVersion(version)
-                                            .build();
-                                    
-                                    conn.execute(update);
-                                }
+                                LOGGER.log(Level.SEVERE, "Updating versions on " + jiraIssueKey 
+                                           + " failed", ex);
                             }
-                        }
-                        
-                    }
-                    catch (ExecutionException ex)
-                    {
-                        Logger.getLogger(GithubWebhook.class.getName()).log(Level.SEVERE, null, ex);
+                        });
                     }
-
                 }
             }
-            
-            
         }
     }
 
@@ -817,8 +1012,8 @@ public class GithubWebhook
             
             try
             {
-                String jiraIssueKey = conn.execute(builder.build());
-                createExternalLink(conn, jiraIssueKey, event);
+                String jiraIssueKey = issueBatcher.create(builder.build(), deadline);
+                conn.execute(buildExternalLink(jiraIssueKey, event), deadline);
                 
             }
             catch (ExecutionException ex)
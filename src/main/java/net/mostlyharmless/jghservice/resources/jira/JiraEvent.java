@@ -39,6 +39,7 @@ import net.mostlyharmless.jghservice.resources.ServiceConfig;
 public class JiraEvent
 {
     private String webhookEvent;
+    private long timestamp;
     private Issue issue;
     private ChangeLog changelog;
     private Comment comment;
@@ -53,6 +54,16 @@ public class JiraEvent
         this.webhookEvent = webhookEvent;
     }
 
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp)
+    {
+        this.timestamp = timestamp;
+    }
+
     public Issue getIssue()
     {
         return issue;
@@ -418,6 +429,7 @@ public class JiraEvent
     
     public static class Comment
     {
+        private String id;
         private Author author;
         private String body;
 
@@ -427,6 +439,16 @@ public class JiraEvent
             It's not present if "All users" is chosen. 
         */
         
+        public String getId()
+        {
+            return id;
+        }
+
+        public void setId(String id)
+        {
+            this.id = id;
+        }
+        
         public Author getAuthor()
         {
             return author;
@@ -16,8 +16,11 @@
 
 package net.mostlyharmless.jghservice.resources.jira;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -30,19 +33,28 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import net.mostlyharmless.jghservice.connector.Bulkhead;
+import net.mostlyharmless.jghservice.connector.Codecs;
+import net.mostlyharmless.jghservice.connector.Deadline;
 import net.mostlyharmless.jghservice.connector.github.CreateIssue;
 import net.mostlyharmless.jghservice.connector.github.CreateMilestone;
-import net.mostlyharmless.jghservice.connector.github.GetLabelsOnIssue;
+import net.mostlyharmless.jghservice.connector.github.GetIssueStates;
 import net.mostlyharmless.jghservice.connector.github.GetMilestones;
 import net.mostlyharmless.jghservice.connector.github.GithubConnector;
+import net.mostlyharmless.jghservice.connector.github.IssueState;
+import net.mostlyharmless.jghservice.connector.github.IssueUpdate;
+import net.mostlyharmless.jghservice.connector.github.IssueWriteCoalescer;
+import net.mostlyharmless.jghservice.resources.EventBulkheads;
+import net.mostlyharmless.jghservice.resources.WebhookDeduplicator;
+import net.mostlyharmless.jghservice.resources.WebhookJournal;
+import net.mostlyharmless.jghservice.resources.WebhookQueue;
 import net.mostlyharmless.jghservice.resources.github.GithubEvent.Milestone;
 import net.mostlyharmless.jghservice.connector.github.ModifyIssue;
+import net.mostlyharmless.jghservice.connector.github.PagedIterator;
 import net.mostlyharmless.jghservice.connector.github.PostComment;
-import net.mostlyharmless.jghservice.connector.github.SetLabelsOnIssue;
 import net.mostlyharmless.jghservice.connector.jira.GetIssue;
 import net.mostlyharmless.jghservice.connector.jira.JiraConnector;
 import net.mostlyharmless.jghservice.resources.ServiceConfig;
-import net.mostlyharmless.jghservice.resources.github.GithubEvent;
 
 /**
  *
@@ -54,16 +66,212 @@ public class JiraWebhook
     private final static String JIRA_ISSUE_CREATED = "jira:issue_created";
     private final static String JIRA_ISSUE_UPDATED = "jira:issue_updated";
     
+    private final static List<String> JIRA_STATUS_LABELS = 
+        Arrays.asList("JIRA: To Do", "JIRA: In Progress", "JIRA: Needs Review",
+                      "JIRA: Closed", "JIRA: Reopened", "JIRA: Resolved");
+    
     private final Pattern githubCommentPattern =
             Pattern.compile("\\[posted via Github by .+\\]$");
     
     @Inject
     ServiceConfig config;
+    @Inject
+    JiraConnector jiraConnector;
+    @Inject
+    GithubConnector githubConnector;
+    @Inject
+    IssueWriteCoalescer writeCoalescer;
+    @Inject
+    EventBulkheads eventBulkheads;
+    @Inject
+    WebhookQueue webhookQueue;
+    @Inject
+    WebhookJournal journal;
+    @Inject
+    WebhookDeduplicator deduplicator;
+    
+    // Started when processing starts; bounds every command run for the event
+    private Deadline deadline = Deadline.NONE;
     
+    /**
+     * Checks the event, journals it and queues it to be processed, 
+     * answering 202 once it's journaled. Events we have nothing to do 
+     * for get a 200, as do deliveries we've already accepted. One the 
+     * queue has no room for waits in the journal until it has.
+     */
     @POST
     @Consumes({MediaType.APPLICATION_JSON})
     @Produces(MediaType.APPLICATION_JSON)
-    public Response jiraWebhook(JiraEvent event)
+    public Response jiraWebhook(byte[] payload)
+    {
+        final JiraEvent event = parse(payload);
+        if (event == null || event.getWebhookEvent() == null)
+        {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        
+        if (!event.getWebhookEvent().equals(JIRA_ISSUE_CREATED) 
+            && !event.getWebhookEvent().equals(JIRA_ISSUE_UPDATED))
+        {
+            return Response.ok().build();
+        }
+        
+        // JIRA can fire the same event twice; it only needs acknowledging.
+        // If it's refused below it's forgotten again so a retry gets 
+        // through.
+        final String deliveryKey = deliveryKey(event);
+        if (!deduplicator.firstSeen(deliveryKey))
+        {
+            Logger.getLogger(JiraWebhook.class.getName())
+                .log(Level.INFO, "Ignoring repeated delivery {0}", deliveryKey);
+            return Response.ok().build();
+        }
+        
+        // Once it's journaled the event survives a restart
+        final WebhookJournal.Entry entry;
+        try
+        {
+            entry = journal.append(WebhookJournal.JIRA, payload);
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(JiraWebhook.class.getName())
+                .log(Level.WARNING, "Rejected '" + event.getWebhookEvent() + "' event: " 
+                    + ex.getMessage());
+            deduplicator.forget(deliveryKey);
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+        }
+        
+        // Events journaled before a restart go first; this one follows them
+        if (journal.defer(entry, payload))
+        {
+            return Response.accepted().build();
+        }
+        
+        boolean queued = webhookQueue.submit(event.getWebhookEvent(), partitionKey(event), 
+                                             () -> handle(event, entry));
+        
+        if (!queued)
+        {
+            // A retry from JIRA isn't guaranteed, so it waits in the 
+            // journal for room on the queue
+            if (journal.requeue(entry, payload))
+            {
+                Logger.getLogger(JiraWebhook.class.getName())
+                    .log(Level.WARNING, "Work queue is full; delivery " + deliveryKey + " ('" 
+                        + event.getWebhookEvent() + "') waits in the journal");
+                return Response.accepted().build();
+            }
+            Logger.getLogger(JiraWebhook.class.getName())
+                .log(Level.SEVERE, "Dropped delivery " + deliveryKey + " ('" + event.getWebhookEvent() 
+                    + "'): work queue is full and there's no journal to keep it in");
+            deduplicator.forget(deliveryKey);
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+        }
+        
+        return Response.accepted().build();
+    }
+    
+    /**
+     * What identifies one delivery of an event: when it was fired and the 
+     * change or comment it's for. Null if JIRA didn't say when.
+     */
+    private static String deliveryKey(JiraEvent event)
+    {
+        if (event.getTimestamp() == 0)
+        {
+            return null;
+        }
+        
+        StringBuilder key = new StringBuilder("jira:")
+            .append(event.getWebhookEvent()).append(':')
+            .append(event.getIssue() == null ? "" : event.getIssue().getJiraIssueKey()).append(':')
+            .append(event.getTimestamp());
+        if (event.hasChangelog() && event.getChangelog().getId() != null)
+        {
+            key.append(":changelog:").append(event.getChangelog().getId());
+        }
+        else if (event.hasComment() && event.getComment().getId() != null)
+        {
+            key.append(":comment:").append(event.getComment().getId());
+        }
+        return key.toString();
+    }
+    
+    /**
+     * Queues an event read back from the journal after a restart, in the
+     * same partition a new one for its issue would go to.
+     * 
+     * @return false if the queue is full
+     */
+    public boolean replay(final WebhookJournal.Entry entry)
+    {
+        final JiraEvent event = parse(entry.getPayload());
+        if (event == null || event.getWebhookEvent() == null)
+        {
+            journal.complete(entry);
+            return true;
+        }
+        return webhookQueue.submit(event.getWebhookEvent(), partitionKey(event), 
+                                   () -> handle(event, entry));
+    }
+    
+    /**
+     * Events for the same issue are processed in order.
+     */
+    private static String partitionKey(JiraEvent event)
+    {
+        return event.getIssue() == null ? null : event.getIssue().getJiraIssueKey();
+    }
+    
+    private static JiraEvent parse(byte[] payload)
+    {
+        try
+        {
+            return Codecs.mapper().readValue(payload, JiraEvent.class);
+        }
+        catch (IOException ex)
+        {
+            return null;
+        }
+    }
+    
+    /**
+     * Processes a queued event. The event's bulkhead (Jira's event names 
+     * already say where they're from) limits how many of its kind are 
+     * processed at once; a worker waits for a slot (within the deadline) 
+     * rather than turning away an event already accepted.
+     */
+    private void handle(JiraEvent event, WebhookJournal.Entry entry)
+    {
+        deadline = Deadline.after(config.getWebhooks().getDeadline());
+        
+        Bulkhead bulkhead = eventBulkheads.get(event.getWebhookEvent());
+        try
+        {
+            bulkhead.acquireWithin(deadline);
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(JiraWebhook.class.getName())
+                .log(Level.WARNING, "Gave up on '" + event.getWebhookEvent() + "' event: " 
+                    + ex.getMessage());
+            journal.complete(entry);
+            return;
+        }
+        
+        try
+        {
+            process(event);
+        }
+        finally
+        {
+            journal.complete(entry);
+            bulkhead.release();
+        }
+    }
+    
+    private void process(JiraEvent event)
     {
         switch(event.getWebhookEvent())
         {
@@ -76,7 +284,13 @@ public class JiraWebhook
             default:
                 break;
         }
-        return Response.ok().build();
+        
+        if (!deadline.getIncomplete().isEmpty())
+        {
+            Logger.getLogger(JiraWebhook.class.getName())
+                .log(Level.WARNING, "Deadline expired processing '" + event.getWebhookEvent() 
+                    + "' event; incomplete: " + deadline.getIncomplete());
+        }
     }
     
     private void processCreateEvent(JiraEvent event)
@@ -90,7 +304,7 @@ public class JiraWebhook
         if (repository != null)
         {
             
-            GithubConnector conn = new GithubConnector(config);
+            GithubConnector conn = githubConnector;
             
             if (!event.getIssue().hasGithubIssueNumber(config))
             {
@@ -114,7 +328,7 @@ public class JiraWebhook
                             .build();
                     try
                     {
-                        conn.execute(create);
+                        conn.execute(create, deadline);
                     }
                     catch (ExecutionException ex)
                     {
@@ -149,27 +363,32 @@ public class JiraWebhook
                         {
                             String jiraEpicKey = event.getIssue().getEpicIssueKey(config);
 
-                            JiraConnector jConn = new JiraConnector(config);
+                            JiraConnector jConn = jiraConnector;
 
                             GetIssue get = 
                                 new GetIssue.Builder()
                                     .withIssueKey(jiraEpicKey)
                                     .build();
-                            try
+                            
+                            GetMilestones getMs = 
+                                new GetMilestones.Builder()
+                                    .withRepositoy(repository)
+                                    .build();
+                            
+                            // The first page of milestones is fetched while 
+                            // we wait for the epic. The rest are only fetched
+                            // (one at a time) if the title isn't found on it.
+                            CompletableFuture<JiraEvent.Issue> epicFuture = jConn.executeAsync(get, deadline);
+                            try (PagedIterator<Milestone> milestones = 
+                                    conn.iterate(getMs, deadline, false))
                             {
-                                JiraEvent.Issue epic = jConn.execute(get);
+                                milestones.start();
+                                JiraEvent.Issue epic = epicFuture.get();
                                 String epicName = epic.getEpicName(config);
 
-                                GetMilestones getMs = 
-                                    new GetMilestones.Builder()
-                                        .withRepositoy(repository)
-                                        .build();
-
-                                List<Milestone> msList = conn.execute(getMs);
-
-
-                                for (Milestone ms : msList)
+                                while (milestones.hasNext())
                                 {
+                                    Milestone ms = milestones.next();
                                     if (ms.getTitle().equals(epicName))
                                     {
                                         milestone = ms.getNumber();
@@ -186,13 +405,18 @@ public class JiraWebhook
                                             .withTitle(epicName)
                                             .build();
 
-                                    milestone = conn.execute(create);
+                                    milestone = conn.execute(create, deadline);
                                 }
                             }
                             catch (ExecutionException ex)
                             {
                                 Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
                             }
+                            catch (InterruptedException ex)
+                            {
+                                Thread.currentThread().interrupt();
+                                Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
+                            }
 
 
                         }
@@ -232,7 +456,7 @@ public class JiraWebhook
                             .build();
                     try
                     {
-                        conn.execute(create);
+                        conn.execute(create, deadline);
                     }
                     catch (ExecutionException ex)
                     {
@@ -249,34 +473,24 @@ public class JiraWebhook
                         " [JIRA: " + event.getIssue().getJiraIssueKey() + "]";
                 try
                 {
-                    GetLabelsOnIssue get = 
-                        new GetLabelsOnIssue.Builder()
-                            .withRepo(repository)
+                    IssueUpdate.Builder update = 
+                        new IssueUpdate.Builder()
+                            .withTitle(title)
                             .withIssueNumber(event.getIssue().getGithubIssueNumber(config))
-                            .build();
-                    
-                    List<String> labels = conn.execute(get);
-                    labels = removeJiraStatusLabels(labels);
-                    labels.add("JIRA: To Do");
+                            .withRepository(repository)
+                            .removeLabels(JIRA_STATUS_LABELS)
+                            .addLabel("JIRA: To Do");
                     
                     List<String> existingLabels = event.getIssue().getLabels();
                     for (String label : existingLabels)
                     {
                         if (label.endsWith("PR_Review"))
                         {
-                            labels.add("JIRA: PR Review");
+                            update.addLabel("JIRA: PR Review");
                         }
                     }
                     
-                    ModifyIssue modify =
-                        new ModifyIssue.Builder()
-                            .withTitle(title)
-                            .withIssueNumber(event.getIssue().getGithubIssueNumber(config))
-                            .withLabels(labels)
-                            .withRepository(repository)
-                            .build();
-                
-                    conn.execute(modify);
+                    writeCoalescer.update(update.build(), deadline);
                 }
                 catch (ExecutionException ex)
                 {
@@ -298,7 +512,10 @@ public class JiraWebhook
         {
             int ghIssueNumber = 
                             event.getIssue().getGithubIssueNumber(config);
-            GithubConnector conn = new GithubConnector(config);
+            GithubConnector conn = githubConnector;
+            // Posting the comment is independent of the changelog updates
+            // below; it's started first and waited on at the end.
+            CompletableFuture<Integer> posted = null;
             if (event.hasComment())
             {
                 String body = event.getComment().getBody();
@@ -317,14 +534,7 @@ public class JiraWebhook
                             .withIssueNumber(event.getIssue().getGithubIssueNumber(config))
                             .withRepo(repository)
                             .build();
-                    try
-                    {
-                        conn.execute(post);
-                    }
-                    catch (ExecutionException ex)
-                    {
-                        Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
-                    }
+                    posted = conn.executeAsync(post, deadline);
                 }
             }
             
@@ -332,195 +542,104 @@ public class JiraWebhook
             {
                 List<JiraEvent.ChangeLog.Item> items = event.getChangelog().getItems();
                 
+                // Each item's change to the GH issue goes through the 
+                // coalescer, which merges them into a single write. Labels are
+                // added and removed rather than replaced, so nothing has to
+                // be read up front to change them.
+                List<CompletableFuture<Void>> writes = new LinkedList<>();
+                
                 for (JiraEvent.ChangeLog.Item item : items)
                 {
+                    IssueUpdate.Builder update = 
+                        new IssueUpdate.Builder()
+                            .withRepository(repository)
+                            .withIssueNumber(ghIssueNumber);
+                    
                     if (item.getField().equals("status"))
                     {
                         // Status change in JIRA, update GH issue
                         
-                        List<String> existingLabels;
-                        
-                        try
-                        {
-                            existingLabels = getExistingLabels(conn, repository, ghIssueNumber);
-                        }
-                        catch (ExecutionException ex)
-                        {
-                            Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
-                            continue;
-                        }
-                        
                         if (item.getToString().equals("Closed") 
                           || item.getToString().equals("Reopened")
                           || item.getToString().equals("Resolved")
                             || item.getToString().equals("Done"))
                         {
                             // Issue closed/reopened in JIRA, close/reopen in GH
-                            ModifyIssue.Builder builder =
-                                new ModifyIssue.Builder()
-                                    .withIssueNumber(ghIssueNumber)
-                                    .withRepository(repository);
-                            
                             if (item.getToString().equals("Reopened"))
                             {
-                                builder.withState("open");
+                                update.withState("open");
                             }
                             else
                             {
-                                builder.withState("closed");
-                            }
-
-                            List<String> labels = removeJiraStatusLabels(existingLabels);
-                            
-                            labels.add("JIRA: " + item.getToString());
-                            
-                            builder.withLabels(labels);
-                            try
-                            {
-                                conn.execute(builder.build());
-                            }
-                            catch (ExecutionException ex)
-                            {
-                                Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
+                                update.withState("closed");
                             }
                         }
-                        else if (item.getToString().equals("In Progress") 
-                                 || item.getToString().equals("Needs Review")
-                                 || item.getToString().equals("To Do"))
+                        else if (!item.getToString().equals("In Progress") 
+                                 && !item.getToString().equals("Needs Review")
+                                 && !item.getToString().equals("To Do"))
                         {
-                            // Issue moved on JIRA board.
-                            List<String> labels = removeJiraStatusLabels(existingLabels);
-                            labels.add("JIRA: " + item.getToString());
-                            
-                            SetLabelsOnIssue set = 
-                                new SetLabelsOnIssue.Builder()
-                                    .withIssueNumber(ghIssueNumber)
-                                    .withRepo(repository)
-                                    .withLabels(labels)
-                                    .build();
-                            try
-                            {
-                                conn.execute(set);
-                            }
-                            catch (ExecutionException ex)
-                            {
-                                Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
-                            }
-                            
+                            continue;
                         }
+                        
+                        update.removeLabels(JIRA_STATUS_LABELS)
+                              .addLabel("JIRA: " + item.getToString());
                     }
                     else if (item.getField().equals("Fix Version") && repository.labelVersions())
                     {
                         // Fix version added/removed
-                        List<String> existingLabels;
-                        
-                        try
+                        if (item.getToString() != null)
                         {
-                            existingLabels = getExistingLabels(conn, repository, ghIssueNumber);
-                            int numLabels = existingLabels.size();
-                            
-                            if (item.getToString() != null)
-                            {
-                                String newLabel = "Fixed in: " + item.getToString();
-                                if (!existingLabels.contains(newLabel))
-                                {
-                                    existingLabels.add("Fixed in: " + item.getToString());
-                                }
-                            }
-                            else if (item.getFromString() != null)
-                            {
-                                existingLabels.remove("Fixed in: " + item.getFromString());
-                            }
-                            
-                            if (numLabels != existingLabels.size())
-                            {
-                                SetLabelsOnIssue set = 
-                                    new SetLabelsOnIssue.Builder()
-                                        .withIssueNumber(ghIssueNumber)
-                                        .withRepo(repository)
-                                        .withLabels(existingLabels)
-                                        .build();
-
-                                conn.execute(set);
-                            }
+                            update.addLabel("Fixed in: " + item.getToString());
                         }
-                        catch (ExecutionException ex)
+                        else if (item.getFromString() != null)
                         {
-                            Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
+                            update.removeLabel("Fixed in: " + item.getFromString());
+                        }
+                        else
+                        {
+                            continue;
                         }
                     }
                     else if (item.getField().equals("Version") && repository.labelVersions())
                     {
                         // Affects version added/removed
-                        List<String> existingLabels;
-                        
-                        try
+                        if (item.getToString() != null)
                         {
-                            existingLabels = getExistingLabels(conn, repository, ghIssueNumber);
-                            int numLabels = existingLabels.size();
-                            
-                            if (item.getToString() != null)
-                            {
-                                String newLabel = "Affects: " + item.getToString();
-                                if (existingLabels.contains(newLabel))
-                                {
-                                    existingLabels.add("Affects: " + item.getToString());
-                                }
-                            }
-                            else if (item.getFromString() != null)
-                            {
-                                existingLabels.remove("Affects: " + item.getFromString());
-                            }
-                            
-                            if (numLabels != existingLabels.size())
-                            {
-                                SetLabelsOnIssue set = 
-                                    new SetLabelsOnIssue.Builder()
-                                        .withIssueNumber(ghIssueNumber)
-                                        .withRepo(repository)
-                                        .withLabels(existingLabels)
-                                        .build();
-
-                                conn.execute(set);
-                            }
+                            update.addLabel("Affects: " + item.getToString());
                         }
-                        catch (ExecutionException ex)
+                        else if (item.getFromString() != null)
                         {
-                            Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
+                            update.removeLabel("Affects: " + item.getFromString());
+                        }
+                        else
+                        {
+                            continue;
                         }
                     }
                     else if (item.getField().equals("assignee") && config.hasUserMappings())
                     {
-                        try
-                        {
-                           String assignee = ModifyIssue.NO_ASSIGNEE; 
+                        String assignee = ModifyIssue.NO_ASSIGNEE; 
 
-                            if (item.getToString() != null)
+                        if (item.getToString() != null)
+                        {
+                            String mappedUser = config.getGithubUser(item.getTo());
+                            if (mappedUser != null)
                             {
-                                String mappedUser = config.getGithubUser(item.getTo());
-                                if (mappedUser != null)
-                                {
-                                    assignee = mappedUser;
-                                }
+                                assignee = mappedUser;
                             }
-                            else 
+                        }
+                        else 
+                        {
+                            // Need to query GH here for the current assignee and see 
+                            // if it's a non-JIRA mapped user. Otherwise a re-assignment
+                            // in GH to a non-Jira user will get nuked as JIRA sees it
+                            // as an update to "no one assigned". 
+                            try
                             {
-                                // Need to query GH here for the current assignee and see 
-                                // if it's a non-JIRA mapped user. Otherwise a re-assignment
-                                // in GH to a non-Jira user will get nuked as JIRA sees it
-                                // as an update to "no one assigned". 
-                                
-                                net.mostlyharmless.jghservice.connector.github.GetIssue get = 
-                                    new net.mostlyharmless.jghservice.connector.github.GetIssue.Builder()
-                                        .withRepository(repository)
-                                        .withIssueNumber(ghIssueNumber)
-                                        .build();
-                                
-                                GithubEvent.Issue issue = conn.execute(get);
-                                
-                                if (issue.hasAssignee())
+                                IssueState ghIssue = getIssueState(conn, repository, ghIssueNumber);
+                                if (ghIssue.hasAssignee())
                                 {
-                                    String ghAssignee = issue.getAssignee().getLogin();
+                                    String ghAssignee = ghIssue.getAssignee();
                                     String jiraUser = config.getJiraUser(ghAssignee);
                                     if (jiraUser == null)
                                     {
@@ -528,56 +647,78 @@ public class JiraWebhook
                                     }
                                 }
                             }
-
-                            ModifyIssue modify =
-                                new ModifyIssue.Builder()
-                                    .withAssignee(assignee)
-                                    .withIssueNumber(ghIssueNumber)
-                                    .withRepository(repository)
-                                    .build();
-                        
-                            conn.execute(modify);
-                        }
-                        catch (ExecutionException ex)
-                        {
-                            Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
+                            catch (ExecutionException ex)
+                            {
+                                Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
+                                continue;
+                            }
                         }
+                        
+                        update.withAssignee(assignee);
+                    }
+                    else
+                    {
+                        continue;
+                    }
+                    
+                    writes.add(writeCoalescer.submit(update.build(), deadline));
+                }
+                
+                for (CompletableFuture<Void> write : writes)
+                {
+                    try
+                    {
+                        write.get();
+                    }
+                    catch (ExecutionException ex)
+                    {
+                        Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                        Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
                     }
                 }
             }
-        }
-    }
-    
-    private List<String> removeJiraStatusLabels(List<String> labels)
-    {
-        List<String> newList = new LinkedList<>();
-        for (String label : labels)
-        {
-            if (!label.equals("JIRA: To Do") 
-                && !label.equals("JIRA: In Progress")
-                && !label.equals("JIRA: Needs Review")
-                && !label.equals("JIRA: Closed")
-                && !label.equals("JIRA: Reopened")
-                && !label.equals("JIRA: Resolved"))
+            
+            if (posted != null)
             {
-                newList.add(label);
+                try
+                {
+                    posted.get();
+                }
+                catch (ExecutionException ex)
+                {
+                    Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    Logger.getLogger(JiraWebhook.class.getName()).log(Level.SEVERE, null, ex);
+                }
             }
         }
-        return newList;
     }
     
-    private List<String> getExistingLabels(GithubConnector conn, 
-                                           ServiceConfig.Repository repository,
-                                           int ghIssueNumber) throws ExecutionException
+    private IssueState getIssueState(GithubConnector conn, 
+                                     ServiceConfig.Repository repository,
+                                     int ghIssueNumber) throws ExecutionException
     {
-        GetLabelsOnIssue getLabels =
-            new GetLabelsOnIssue.Builder()
+        GetIssueStates get =
+            new GetIssueStates.Builder()
+                .withRepository(repository)
                 .withIssueNumber(ghIssueNumber)
-                .withRepo(repository)
                 .build();
-
-        return conn.execute(getLabels);
         
+        IssueState state = conn.execute(get, deadline).get(ghIssueNumber);
+        if (state == null)
+        {
+            throw new ExecutionException(
+                new IOException("No GH issue #" + ghIssueNumber + " in " + 
+                                repository.getGithubOwner() + "/" + repository.getGithubName()));
+        }
+        return state;
     }
     
 }